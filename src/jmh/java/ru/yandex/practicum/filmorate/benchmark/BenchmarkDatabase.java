@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.flywaydb.core.Flyway;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Поднимает in-memory H2 со схемой приложения и наполняет её данными для бенчмарков.
+ */
+final class BenchmarkDatabase {
+    private static final int GENRES = 6;
+    private static final int MPA = 5;
+
+    private BenchmarkDatabase() {
+    }
+
+    static SingleConnectionDataSource create(String name) {
+        // В форке JMH нет конфигурации logback, а DEBUG-лог JdbcTemplate искажает замеры.
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "", true);
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        return dataSource;
+    }
+
+    static void seedFilms(JdbcTemplate jdbcTemplate, int count) {
+        List<Object[]> films = new ArrayList<>();
+        List<Object[]> genres = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            films.add(new Object[]{"film" + i, "description" + i, Date.valueOf(LocalDate.of(2000, 1, 1)),
+                    90 + i % 60, i % 1000, i % MPA + 1});
+            for (int g = 0; g < i % 4; g++) {
+                genres.add(new Object[]{i, (i + g) % GENRES + 1});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO films (name, description, release_date, duration, likes_count, mpa_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", films);
+        jdbcTemplate.batchUpdate("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)", genres);
+    }
+
+    static void seedUsers(JdbcTemplate jdbcTemplate, int count) {
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            users.add(new Object[]{"user" + i + "@mail.ru", "user" + i, "name" + i,
+                    Date.valueOf(LocalDate.of(1990, 1, 1))});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)", users);
+    }
+}
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraphIndex;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск id общих друзей: прежнее двойное соединение friends в SQL против пересечения массивов FriendGraphIndex.
+ * У пользователя 1 friends друзей, у пользователя 2 — каждый второй из них, у пользователя 3 — сотня
+ * (пересечение бинарным поиском).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommonFriendsBenchmark {
+    private static final int FIRST_FRIEND = 4;
+
+    @Param({"1000", "100000"})
+    public int friends;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private FriendGraphIndex friendGraph;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.create("common_friends");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        BenchmarkDatabase.seedUsers(jdbcTemplate, friends + FIRST_FRIEND);
+        List<Object[]> links = new ArrayList<>();
+        for (int i = 0; i < friends; i++) {
+            int friendId = FIRST_FRIEND + i;
+            links.add(new Object[]{1, friendId});
+            if (i % 2 == 0) {
+                links.add(new Object[]{2, friendId});
+            }
+            if (i % (friends / 100) == 0) {
+                links.add(new Object[]{3, friendId});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO friends (user_id, friend_id, status) VALUES (?, ?, FALSE)", links);
+        friendGraph = new FriendGraphIndex(true);
+        new UserDbStorage(jdbcTemplate, friendGraph).loadFriendGraph();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public List<Integer> sqlJoin() {
+        String sql = "SELECT f1.friend_id FROM friends AS f1 " +
+                "JOIN friends AS f2 ON f2.friend_id = f1.friend_id " +
+                "WHERE f1.user_id = ? AND f2.user_id = ?;";
+        return jdbcTemplate.queryForList(sql, Integer.class, 1, 2);
+    }
+
+    @Benchmark
+    public int[] indexMerge() {
+        return friendGraph.getCommonFriends(1, 2);
+    }
+
+    @Benchmark
+    public int[] indexGallop() {
+        return friendGraph.getCommonFriends(1, 3);
+    }
+}
@@ -0,0 +1,147 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.yandex.practicum.filmorate.exceptions.ElementNotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraphIndex;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнивает прежние добавление и удаление друга (до девяти операторов без транзакции)
+ * с транзакционной версией UserDbStorage. Одна операция — добавить друга и удалить его обратно;
+ * у пары уже есть встречная дружба, поэтому каждый раз меняется и статус. Перцентили латентности
+ * печатает режим SampleTime, число операторов на операцию выводится после прогона.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FriendWriteBenchmark {
+    @Param({"1000"})
+    public int users;
+
+    private SingleConnectionDataSource dataSource;
+    private StatementCountingDataSource countingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private UserDbStorage userStorage;
+    private long operations;
+    private int userId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.create("friend_write");
+        countingDataSource = new StatementCountingDataSource(dataSource);
+        jdbcTemplate = new JdbcTemplate(countingDataSource);
+        BenchmarkDatabase.seedUsers(jdbcTemplate, users);
+        List<Object[]> friends = new ArrayList<>();
+        for (int i = 1; i < users; i++) {
+            friends.add(new Object[]{i + 1, i});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO friends (user_id, friend_id, status) VALUES (?, ?, FALSE)", friends);
+        userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCounters() {
+        countingDataSource.reset();
+        operations = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printStatements() {
+        System.out.printf("%nstatements/op: %.2f%n", (double) countingDataSource.getStatements() / operations);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public User addAndDeleteFriendLegacy() {
+        int id = nextUserId();
+        legacyAddFriend(id, id + 1);
+        return legacyDeleteFriend(id, id + 1);
+    }
+
+    @Benchmark
+    public User addAndDeleteFriendTransactional() {
+        int id = nextUserId();
+        userStorage.addFriend(id, id + 1);
+        return userStorage.deleteFriend(id, id + 1);
+    }
+
+    private int nextUserId() {
+        operations++;
+        userId = userId % (users - 1) + 1;
+        return userId;
+    }
+
+    private User legacyAddFriend(int id, int friendId) {
+        legacyGetUser(id);
+        legacyGetUser(friendId);
+        String sqlCreate = "INSERT INTO friends(user_id, friend_id, status) VALUES (?, ?, ?);";
+        String sqlUpdate = "UPDATE friends SET status = ? WHERE user_id = ? AND friend_id = ?";
+        if (!legacyCheckFriend(id, friendId)) {
+            if (legacyCheckFriend(friendId, id)) {
+                jdbcTemplate.update(sqlCreate, id, friendId, true);
+                jdbcTemplate.update(sqlUpdate, true, friendId, id);
+            } else {
+                jdbcTemplate.update(sqlCreate, id, friendId, false);
+            }
+            jdbcTemplate.update("UPDATE users SET friends_count = friends_count + 1 WHERE user_id = ?", id);
+        }
+        return legacyGetUser(friendId);
+    }
+
+    private User legacyDeleteFriend(int id, int friendId) {
+        legacyGetUser(id);
+        legacyGetUser(friendId);
+        String sqlUpdate = "UPDATE friends SET status = ? WHERE user_id = ? AND friend_id = ?";
+        if (legacyCheckFriend(id, friendId)) {
+            jdbcTemplate.update("DELETE FROM friends WHERE user_id = ? AND friend_id = ?;", id, friendId);
+            if (legacyCheckFriend(friendId, id)) {
+                jdbcTemplate.update(sqlUpdate, false, friendId, id);
+            }
+            jdbcTemplate.update("UPDATE users SET friends_count = friends_count - 1 WHERE user_id = ?", id);
+        }
+        return legacyGetUser(friendId);
+    }
+
+    private User legacyGetUser(int id) {
+        List<User> user = jdbcTemplate.query("SELECT * FROM users WHERE user_id = ?;",
+                (rs, rowNum) -> new User(rs.getInt("user_id"), rs.getString("email"), rs.getString("login"),
+                        rs.getString("name"), rs.getDate("birthday").toLocalDate(), rs.getInt("friends_count")),
+                id);
+        if (user.isEmpty()) {
+            throw new ElementNotFoundException("Объект не найден");
+        }
+        return user.get(0);
+    }
+
+    private boolean legacyCheckFriend(int id, int friendId) {
+        String sql = "SELECT COUNT(*) FROM friends WHERE user_id = ? AND friend_id = ?";
+        return jdbcTemplate.queryForObject(sql, Integer.class, id, friendId) > 0;
+    }
+}
@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнивает прежнее чтение фильмов через GROUP_CONCAT и разбор строки жанров
+ * с выборкой базовых строк и догрузкой жанров одним IN-запросом.
+ * Аллокации видны с профайлером gc: -Djmh.args="GenreHydration -prof gc".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenreHydrationBenchmark {
+    private static final String LEGACY_SQL = "SELECT f.*, m.name AS mpa_name, " +
+            "GROUP_CONCAT(CONCAT(g.genre_id, ':', g.name) SEPARATOR ', ') AS genres " +
+            "FROM films AS f " +
+            "LEFT JOIN mpa AS m ON f.mpa_id = m.mpa_id " +
+            "LEFT JOIN film_genres AS fg ON f.film_id = fg.film_id " +
+            "LEFT JOIN genres AS g ON fg.genre_id = g.genre_id ";
+
+    @Param({"10000"})
+    public int films;
+
+    @Param({"10"})
+    public int count;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private FilmDbStorage filmStorage;
+    private int filmId;
+
+    @Setup
+    public void setUp() {
+        dataSource = BenchmarkDatabase.create("genre_hydration");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        BenchmarkDatabase.seedFilms(jdbcTemplate, films);
+        filmStorage = new FilmDbStorage(jdbcTemplate, new PopularityIndex(false), new FilmSearchIndex(),
+                new GenreDbStorage(jdbcTemplate), new MpaDbStorage(jdbcTemplate));
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public List<Film> getFilmsGroupConcat() {
+        return jdbcTemplate.query(LEGACY_SQL + "GROUP BY f.film_id", (rs, rowNum) -> mapLegacyRow(rs));
+    }
+
+    @Benchmark
+    public List<Film> getFilmsBatched() {
+        return filmStorage.getFilms();
+    }
+
+    @Benchmark
+    public List<Film> getFilmGroupConcat() {
+        return jdbcTemplate.query(LEGACY_SQL + "WHERE f.film_id = ? GROUP BY f.film_id",
+                (rs, rowNum) -> mapLegacyRow(rs), nextFilmId());
+    }
+
+    @Benchmark
+    public Film getFilmBatched() {
+        return filmStorage.getFilm(nextFilmId());
+    }
+
+    @Benchmark
+    public List<Film> getTopFilmsGroupConcat() {
+        return jdbcTemplate.query(LEGACY_SQL + "GROUP BY f.film_id ORDER BY f.likes_count DESC LIMIT ?",
+                (rs, rowNum) -> mapLegacyRow(rs), count);
+    }
+
+    @Benchmark
+    public List<Film> getTopFilmsBatched() {
+        return filmStorage.getTopFilms(count);
+    }
+
+    private int nextFilmId() {
+        filmId = filmId % films + 1;
+        return filmId;
+    }
+
+    private static Film mapLegacyRow(ResultSet rs) throws SQLException {
+        String genresStr = rs.getString("genres");
+        List<Genre> genres = new ArrayList<>();
+        if (!genresStr.equals(":")) {
+            for (String token : genresStr.split(", ")) {
+                String[] parts = token.split(":");
+                genres.add(new Genre(Integer.parseInt(parts[0]), parts[1]));
+            }
+        }
+        return new Film(rs.getInt("film_id"), rs.getString("name"), rs.getString("description"),
+                rs.getDate("release_date").toLocalDate(), rs.getInt("duration"), rs.getInt("likes_count"),
+                genres, new Mpa(rs.getInt("mpa_id"), rs.getString("mpa_name")));
+    }
+}
@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
+import ru.yandex.practicum.filmorate.threads.VirtualThreads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочное сравнение режимов выполнения запросов: пачка из requests одновременных «запросов», каждый из
+ * которых читает фильм и ждёт latencyMs внутри H2 (имитация сетевой задержки удалённой БД). platform — пул
+ * из 200 потоков, как у Tomcat по умолчанию, virtual — поток на задачу. Соединений в пуле хватает на все
+ * запросы, чтобы сравнивались именно потоки. Режим virtual запускается только на JDK 21+:
+ * -Djmh.args="RequestExecutor -p executor=platform,virtual".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestExecutorBenchmark {
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int FILMS = 1000;
+
+    @Param({"platform"})
+    public String executor;
+
+    @Param({"2000"})
+    public int requests;
+
+    @Param({"5"})
+    public int latencyMs;
+
+    private SingleConnectionDataSource seedDataSource;
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private FilmDbStorage filmStorage;
+    private ExecutorService executorService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        seedDataSource = BenchmarkDatabase.create("request_executor");
+        JdbcTemplate seedTemplate = new JdbcTemplate(seedDataSource);
+        BenchmarkDatabase.seedFilms(seedTemplate, FILMS);
+        seedTemplate.execute("CREATE ALIAS IF NOT EXISTS SLEEP FOR \"java.lang.Thread.sleep(long)\"");
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:request_executor;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(requests);
+        dataSource.setMinimumIdle(requests);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        filmStorage = new FilmDbStorage(jdbcTemplate, new PopularityIndex(false), new FilmSearchIndex(),
+                new GenreDbStorage(jdbcTemplate), new MpaDbStorage(jdbcTemplate));
+        if ("virtual".equals(executor)) {
+            executorService = VirtualThreads.newPerTaskExecutor().orElseThrow(() ->
+                    new IllegalStateException("Виртуальные потоки требуют JDK 21+"));
+        } else {
+            executorService = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executorService.shutdownNow();
+        dataSource.close();
+        new JdbcTemplate(seedDataSource).execute("DROP ALL OBJECTS");
+        seedDataSource.destroy();
+    }
+
+    @Benchmark
+    public int serveBurst() throws Exception {
+        List<Future<Integer>> responses = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            int filmId = i % FILMS + 1;
+            responses.add(executorService.submit(() -> {
+                jdbcTemplate.execute("CALL SLEEP(" + latencyMs + ")");
+                return filmStorage.getFilm(filmId).getId();
+            }));
+        }
+        int served = 0;
+        for (Future<Integer> response : responses) {
+            served += response.get() > 0 ? 1 : 0;
+        }
+        return served;
+    }
+}
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Считает SQL-операторы, отправленные через соединения источника данных.
+ */
+final class StatementCountingDataSource extends DelegatingDataSource {
+    private final AtomicLong statements = new AtomicLong();
+
+    StatementCountingDataSource(DataSource target) {
+        super(target);
+    }
+
+    long getStatements() {
+        return statements.get();
+    }
+
+    void reset() {
+        statements.set(0);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = super.getConnection();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.equals("prepareStatement") || name.equals("createStatement")
+                            || name.equals("prepareCall")) {
+                        statements.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+}
@@ -0,0 +1,149 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraphIndex;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Горячие операции FilmStorage и UserStorage для обеих реализаций на одинаковых данных.
+ * Размер набора задаётся параметрами: -Djmh.args="Storage -p films=100000 -p users=10000".
+ * readFilmPage читает страницу фильмов и в db-варианте измеряет mapRowToFilm с догрузкой жанров.
+ * Пользователи 1 и 2 дружат с каждым вторым и каждым третьим пользователем соответственно.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    private static final int PAGE_SIZE = 100;
+    private static final int FIRST_FRIEND = 3;
+
+    @Param({"db", "in-memory"})
+    public String storage;
+
+    @Param({"10000"})
+    public int films;
+
+    @Param({"1000"})
+    public int users;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Friendship> friendships = new ArrayList<>();
+        for (int id = FIRST_FRIEND; id <= users; id++) {
+            if (id % 2 == 0) {
+                friendships.add(new Friendship(1, id));
+            }
+            if (id % 3 == 0) {
+                friendships.add(new Friendship(2, id));
+            }
+        }
+        if ("db".equals(storage)) {
+            dataSource = BenchmarkDatabase.create("storage");
+            jdbcTemplate = new JdbcTemplate(dataSource);
+            BenchmarkDatabase.seedFilms(jdbcTemplate, films);
+            BenchmarkDatabase.seedUsers(jdbcTemplate, users);
+            FilmDbStorage filmDbStorage = new FilmDbStorage(jdbcTemplate, new PopularityIndex(true),
+                    new FilmSearchIndex(), new GenreDbStorage(jdbcTemplate), new MpaDbStorage(jdbcTemplate));
+            filmDbStorage.loadPopularityIndex();
+            UserDbStorage userDbStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
+            userDbStorage.addFriends(friendships);
+            userDbStorage.loadFriendGraph();
+            filmStorage = filmDbStorage;
+            userStorage = userDbStorage;
+        } else {
+            filmStorage = new InMemoryFilmStorage();
+            userStorage = new InMemoryUserStorage();
+            for (int i = 1; i <= films; i++) {
+                Film film = new Film("film" + i, "description" + i, LocalDate.of(2000, 1, 1), 90 + i % 60);
+                film.setMpa(new Mpa(i % 5 + 1, null));
+                filmStorage.createFilm(film);
+            }
+            for (int i = 1; i <= users; i++) {
+                userStorage.createUser(new User("user" + i + "@mail.ru", "user" + i, "name" + i,
+                        LocalDate.of(1990, 1, 1)));
+            }
+            userStorage.addFriends(friendships);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (dataSource != null) {
+            jdbcTemplate.execute("DROP ALL OBJECTS");
+            dataSource.destroy();
+        }
+    }
+
+    @Benchmark
+    public Film getFilm() {
+        return filmStorage.getFilm(ThreadLocalRandom.current().nextInt(films) + 1);
+    }
+
+    @Benchmark
+    public List<Film> getTopFilms() {
+        return filmStorage.getTopFilms(10);
+    }
+
+    /**
+     * Лайк и его снятие, чтобы набор данных не менялся от итерации к итерации.
+     */
+    @Benchmark
+    public boolean addLike() {
+        int filmId = ThreadLocalRandom.current().nextInt(films) + 1;
+        int userId = ThreadLocalRandom.current().nextInt(users) + 1;
+        boolean added = filmStorage.addLike(filmId, userId);
+        filmStorage.deleteLike(filmId, userId);
+        return added;
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends() {
+        return userStorage.getCommonFriends(1, 2);
+    }
+
+    @Benchmark
+    public List<Film> readFilmPage() {
+        return filmStorage.getFilms(ThreadLocalRandom.current().nextInt(Math.max(1, films - PAGE_SIZE)), PAGE_SIZE);
+    }
+}
@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class ConditionalGetConfiguration implements WebMvcConfigurer {
+    private final ConditionalGetInterceptor conditionalGetInterceptor;
+
+    @Autowired
+    public ConditionalGetConfiguration(ConditionalGetInterceptor conditionalGetInterceptor) {
+        this.conditionalGetInterceptor = conditionalGetInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(conditionalGetInterceptor);
+    }
+}
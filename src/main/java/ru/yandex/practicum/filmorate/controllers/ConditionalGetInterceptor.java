@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Условный GET для методов с {@link Versioned}. ETag считается по счётчикам версий до вызова контроллера:
+ * если он совпал с If-None-Match, сразу уходит 304, и ни запрос к хранилищу, ни сериализация не выполняются.
+ * Для методов с cached = true тело с тем же ETag отдаётся из {@link ResponseBodyCache}.
+ */
+@Component
+public class ConditionalGetInterceptor implements HandlerInterceptor {
+    private final EntityVersions versions;
+    private final ResponseBodyCache responseBodyCache;
+
+    @Autowired
+    public ConditionalGetInterceptor(EntityVersions versions, ResponseBodyCache responseBodyCache) {
+        this.versions = versions;
+        this.responseBodyCache = responseBodyCache;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        Versioned versioned = ((HandlerMethod) handler).getMethodAnnotation(Versioned.class);
+        if (versioned == null) {
+            return true;
+        }
+        String etag = etag(versioned, request);
+        if (etag == null || new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return etag == null;
+        }
+        return !versioned.cached() || !responseBodyCache.writeIfPresent(request, response, etag);
+    }
+
+    private String etag(Versioned versioned, HttpServletRequest request) {
+        if (versioned.reference()) {
+            return versions.staticTag(versioned.value());
+        }
+        if (versioned.idVariable().isEmpty()) {
+            return versions.collectionTag(versioned.value());
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(
+                HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        try {
+            return versions.entityTag(versioned.value(), Integer.parseInt(variables.get(versioned.idVariable())));
+        } catch (NumberFormatException | NullPointerException e) {
+            // Некорректный id отклонит сам контроллер.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.service.ExportService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Потоковая выгрузка в NDJSON. С параметром gzip=true ответ сжимается на лету и отдаётся
+ * с заголовком Content-Encoding: gzip.
+ */
+@RequestMapping("/export")
+@RestController
+public class ExportController {
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private ExportService exportService;
+
+    @Autowired
+    public ExportController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    @GetMapping("/films")
+    public ResponseEntity<StreamingResponseBody> exportFilms(@RequestParam(defaultValue = "false") boolean gzip) {
+        return stream(gzip, exportService::exportFilms);
+    }
+
+    @GetMapping("/films/likes")
+    public ResponseEntity<StreamingResponseBody> exportLikes(@RequestParam(defaultValue = "false") boolean gzip) {
+        return stream(gzip, exportService::exportLikes);
+    }
+
+    @GetMapping("/users")
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(defaultValue = "false") boolean gzip) {
+        return stream(gzip, exportService::exportUsers);
+    }
+
+    @GetMapping("/users/friends")
+    public ResponseEntity<StreamingResponseBody> exportFriendships(
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        return stream(gzip, exportService::exportFriendships);
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(boolean gzip, Exporter exporter) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE));
+        if (!gzip) {
+            return response.body(exporter::export);
+        }
+        return response.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .body(out -> {
+                    GZIPOutputStream compressed = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+                    exporter.export(compressed);
+                    compressed.finish();
+                });
+    }
+
+    @FunctionalInterface
+    private interface Exporter {
+        long export(OutputStream out) throws IOException;
+    }
+}
@@ -1,7 +1,12 @@
 package ru.yandex.practicum.filmorate.controllers;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -11,38 +16,93 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.IngestResult;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.PopularityFeed;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @Slf4j
 @RequestMapping("/films")
 @RestController
 public class FilmController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
     private FilmService filmService;
+    private PopularityFeed popularityFeed;
+    private ObjectReader filmReader;
+    private ObjectReader likeReader;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, PopularityFeed popularityFeed, ObjectMapper objectMapper) {
         this.filmService = filmService;
+        this.popularityFeed = popularityFeed;
+        this.filmReader = objectMapper.readerFor(Film.class);
+        this.likeReader = objectMapper.readerFor(Like.class);
     }
 
+    @Versioned(EntityVersions.FILMS)
     @GetMapping
     public List<Film> getFilms() {
         return filmService.getFilms();
     }
 
+    @Versioned(EntityVersions.FILMS)
+    @GetMapping(params = "limit")
+    public ResponseEntity<List<Film>> getFilms(@RequestParam(defaultValue = "0") int after,
+                                               @RequestParam int limit) {
+        List<Film> films = filmService.getFilms(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (films.size() == limit) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(films.get(films.size() - 1).getId()));
+        }
+        return response.body(films);
+    }
+
     @PostMapping
     public Film createFilm(@Valid @RequestBody Film film) {
         return filmService.createFilm(film);
     }
 
+    /**
+     * Принимает JSON-массив фильмов или NDJSON (по фильму в строке) и читает его потоком, не собирая в память.
+     */
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public BatchResult createFilms(InputStream body) throws IOException {
+        try (MappingIterator<Film> films = filmReader.readValues(body)) {
+            BatchResult result = filmService.createFilms(films);
+            log.info("Пакетная загрузка фильмов: получено {}, создано {}.", result.getReceived(), result.getCreated());
+            return result;
+        }
+    }
+
+    /**
+     * Массовая загрузка лайков: JSON-массив или NDJSON записей вида {"filmId": 1, "userId": 2}.
+     */
+    @PostMapping(value = "/likes/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public IngestResult addLikes(InputStream body) throws IOException {
+        try (MappingIterator<Like> likes = likeReader.readValues(body)) {
+            IngestResult result = filmService.addLikes(likes);
+            log.info("Массовая загрузка лайков: получено {}, добавлено {} за {} мс.",
+                    result.getReceived(), result.getApplied(), result.getElapsedMs());
+            return result;
+        }
+    }
+
     @PutMapping
     public Film updateFilm(@Valid @RequestBody Film film) {
         return filmService.updateFilm(film);
     }
 
+    @Versioned(value = EntityVersions.FILMS, idVariable = "id")
     @GetMapping("/{id}")
     public Film getFilm(@PathVariable int id) {
         return filmService.getFilm(id);
@@ -58,8 +118,26 @@ public class FilmController {
         filmService.deleteLike(id, userId);
     }
 
+    @Versioned(value = EntityVersions.FILMS, cached = true)
     @GetMapping("/popular")
     public List<Film> getTopFilms(@RequestParam(defaultValue = "10") int count) {
         return filmService.getTopFilms(count);
     }
+
+    /**
+     * Полнотекстовый поиск по названию и описанию; слова запроса могут быть началами слов.
+     */
+    @Versioned(EntityVersions.FILMS)
+    @GetMapping("/search")
+    public List<Film> searchFilms(@RequestParam String q, @RequestParam(defaultValue = "10") int limit) {
+        return filmService.searchFilms(q, limit);
+    }
+
+    /**
+     * Server-Sent Events с топом фильмов: событие приходит, только когда меняется состав или порядок топа.
+     */
+    @GetMapping(value = "/popular/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamTopFilms(@RequestParam(defaultValue = "10") int count) {
+        return popularityFeed.subscribe(count);
+    }
 }
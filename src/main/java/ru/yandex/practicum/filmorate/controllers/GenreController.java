@@ -8,6 +8,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
 import java.util.List;
 
@@ -22,11 +23,13 @@ public class GenreController {
         this.genreService = genreService;
     }
 
+    @Versioned(value = EntityVersions.GENRES, reference = true, cached = true)
     @GetMapping
     public List<Genre> getAllGenres() {
         return genreService.getAllGenres();
     }
 
+    @Versioned(value = EntityVersions.GENRES, reference = true, cached = true)
     @GetMapping("/{id}")
     public Genre getGenre(@PathVariable int id) {
         return genreService.getGenre(id);
@@ -8,6 +8,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.service.MpaService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
 import java.util.List;
 
@@ -22,11 +23,13 @@ public class MpaController {
         this.mpaService = mpaService;
     }
 
+    @Versioned(value = EntityVersions.MPA, reference = true, cached = true)
     @GetMapping
     public List<Mpa> getAllMpa() {
         return mpaService.getAllMpa();
     }
 
+    @Versioned(value = EntityVersions.MPA, reference = true, cached = true)
     @GetMapping("/{id}")
     public Mpa getMpa(@PathVariable int id) {
         return mpaService.getMpa(id);
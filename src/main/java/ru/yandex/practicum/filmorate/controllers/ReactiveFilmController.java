@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.reactive.NdjsonFlowWriter;
+import ru.yandex.practicum.filmorate.service.ReactiveFilmService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.Valid;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Неблокирующий вариант {@link FilmController}. Ответы приходят как CompletableFuture, поэтому поток
+ * Tomcat не ждёт базу; полный список фильмов отдаётся потоком NDJSON с учётом скорости клиента.
+ */
+@RequestMapping("/reactive/films")
+@RestController
+public class ReactiveFilmController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private ReactiveFilmService filmService;
+    private ObjectWriter filmWriter;
+    private int streamBatchSize;
+    private long streamTimeoutMs;
+
+    @Autowired
+    public ReactiveFilmController(ReactiveFilmService filmService,
+                                  ObjectMapper objectMapper,
+                                  @Value("${filmorate.reactive.stream-batch-size:256}") int streamBatchSize,
+                                  @Value("${filmorate.reactive.stream-timeout-ms:300000}") long streamTimeoutMs) {
+        this.filmService = filmService;
+        this.filmWriter = objectMapper.writerFor(Film.class);
+        this.streamBatchSize = streamBatchSize;
+        this.streamTimeoutMs = streamTimeoutMs;
+    }
+
+    @Versioned(EntityVersions.FILMS)
+    @GetMapping
+    public void getFilms(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        NdjsonFlowWriter.stream(request, response, filmService.getFilms(), filmWriter, streamBatchSize,
+                streamTimeoutMs);
+    }
+
+    @Versioned(EntityVersions.FILMS)
+    @GetMapping(params = "limit")
+    public CompletableFuture<ResponseEntity<List<Film>>> getFilms(@RequestParam(defaultValue = "0") int after,
+                                                                  @RequestParam int limit) {
+        return filmService.getFilms(after, limit).thenApply(films -> {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (films.size() == limit) {
+                response.header(NEXT_CURSOR_HEADER, String.valueOf(films.get(films.size() - 1).getId()));
+            }
+            return response.body(films);
+        });
+    }
+
+    @PostMapping
+    public CompletableFuture<Film> createFilm(@Valid @RequestBody Film film) {
+        return filmService.createFilm(film);
+    }
+
+    @PutMapping
+    public CompletableFuture<Film> updateFilm(@Valid @RequestBody Film film) {
+        return filmService.updateFilm(film);
+    }
+
+    @Versioned(value = EntityVersions.FILMS, idVariable = "id")
+    @GetMapping("/{id}")
+    public CompletableFuture<Film> getFilm(@PathVariable int id) {
+        return filmService.getFilm(id);
+    }
+
+    @PutMapping("/{id}/like/{userId}")
+    public CompletableFuture<Void> addLike(@PathVariable int id, @PathVariable int userId) {
+        return filmService.addLike(id, userId);
+    }
+
+    @DeleteMapping("/{id}/like/{userId}")
+    public CompletableFuture<Void> deleteLike(@PathVariable int id, @PathVariable int userId) {
+        return filmService.deleteLike(id, userId);
+    }
+
+    @Versioned(EntityVersions.FILMS)
+    @GetMapping("/popular")
+    public CompletableFuture<List<Film>> getTopFilms(@RequestParam(defaultValue = "10") int count) {
+        return filmService.getTopFilms(count);
+    }
+}
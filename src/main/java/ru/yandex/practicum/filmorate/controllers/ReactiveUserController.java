@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.reactive.NdjsonFlowWriter;
+import ru.yandex.practicum.filmorate.service.ReactiveUserService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.Valid;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Неблокирующий вариант {@link UserController}, устроен так же, как {@link ReactiveFilmController}.
+ */
+@RequestMapping("/reactive/users")
+@RestController
+public class ReactiveUserController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private ReactiveUserService userService;
+    private ObjectWriter userWriter;
+    private int streamBatchSize;
+    private long streamTimeoutMs;
+
+    @Autowired
+    public ReactiveUserController(ReactiveUserService userService,
+                                  ObjectMapper objectMapper,
+                                  @Value("${filmorate.reactive.stream-batch-size:256}") int streamBatchSize,
+                                  @Value("${filmorate.reactive.stream-timeout-ms:300000}") long streamTimeoutMs) {
+        this.userService = userService;
+        this.userWriter = objectMapper.writerFor(User.class);
+        this.streamBatchSize = streamBatchSize;
+        this.streamTimeoutMs = streamTimeoutMs;
+    }
+
+    @Versioned(EntityVersions.USERS)
+    @GetMapping
+    public void getUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        NdjsonFlowWriter.stream(request, response, userService.getUsers(), userWriter, streamBatchSize,
+                streamTimeoutMs);
+    }
+
+    @Versioned(EntityVersions.USERS)
+    @GetMapping(params = "limit")
+    public CompletableFuture<ResponseEntity<List<User>>> getUsers(@RequestParam(defaultValue = "0") int after,
+                                                                  @RequestParam int limit) {
+        return userService.getUsers(after, limit).thenApply(users -> {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (users.size() == limit) {
+                response.header(NEXT_CURSOR_HEADER, String.valueOf(users.get(users.size() - 1).getId()));
+            }
+            return response.body(users);
+        });
+    }
+
+    @PostMapping
+    public CompletableFuture<User> createUser(@Valid @RequestBody User user) {
+        return userService.createUser(user);
+    }
+
+    @PutMapping
+    public CompletableFuture<User> updateUser(@Valid @RequestBody User user) {
+        return userService.updateUser(user);
+    }
+
+    @Versioned(value = EntityVersions.USERS, idVariable = "id")
+    @GetMapping("/{id}")
+    public CompletableFuture<User> getUser(@PathVariable int id) {
+        return userService.getUser(id);
+    }
+
+    @Versioned(EntityVersions.USERS)
+    @GetMapping("/{id}/friends")
+    public CompletableFuture<List<User>> getFriends(@PathVariable int id) {
+        return userService.getFriends(id);
+    }
+
+    @PutMapping("/{id}/friends/{friendId}")
+    public CompletableFuture<User> addFriend(@PathVariable int id, @PathVariable int friendId) {
+        return userService.addFriend(id, friendId);
+    }
+
+    @DeleteMapping("/{id}/friends/{friendId}")
+    public CompletableFuture<User> deleteFriend(@PathVariable int id, @PathVariable int friendId) {
+        return userService.deleteFriend(id, friendId);
+    }
+
+    @Versioned(EntityVersions.USERS)
+    @GetMapping("/{id}/friends/common/{otherId}")
+    public CompletableFuture<List<User>> getCommonFriends(@PathVariable int id, @PathVariable int otherId) {
+        return userService.getCommonFriends(id, otherId);
+    }
+}
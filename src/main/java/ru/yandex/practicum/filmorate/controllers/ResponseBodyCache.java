@@ -0,0 +1,143 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Готовые тела ответов методов с {@link Versioned#cached()}: JSON и его gzip-версия по адресу запроса
+ * вместе с ETag, для которого они построены. Пока ETag не изменился, ответ пишется из кэша без Jackson
+ * и без обращения к хранилищу; после изменения версии запись перестраивается при первом промахе.
+ */
+@Slf4j
+@Component
+public class ResponseBodyCache {
+    static final String ETAG_ATTRIBUTE = ResponseBodyCache.class.getName() + ".etag";
+    private final Cache<String, Entry> entries;
+    private final ObjectWriter writer;
+
+    @Autowired
+    public ResponseBodyCache(ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${filmorate.responses.cache.max-entries:1000}") long maxEntries) {
+        this.writer = objectMapper.writer();
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "responses");
+    }
+
+    /**
+     * @return true, если ответ записан из кэша
+     */
+    boolean writeIfPresent(HttpServletRequest request, HttpServletResponse response, String etag)
+            throws IOException {
+        Entry entry = entries.getIfPresent(key(request));
+        if (entry == null || !entry.etag.equals(etag)) {
+            request.setAttribute(ETAG_ATTRIBUTE, etag);
+            return false;
+        }
+        byte[] body = entry.json;
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (acceptsGzip(request)) {
+            body = entry.gzip;
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        return true;
+    }
+
+    /**
+     * Сохраняет тело ответа, построенное после чтения версии etag.
+     */
+    void put(HttpServletRequest request, String etag, Object body) {
+        try {
+            byte[] json = writer.writeValueAsBytes(body);
+            entries.put(key(request), new Entry(etag, json, gzip(json)));
+        } catch (IOException e) {
+            log.warn("Не удалось закэшировать ответ {}: {}", key(request), e.getMessage());
+        }
+    }
+
+    private static String key(HttpServletRequest request) {
+        String query = request.getQueryString();
+        return query == null ? request.getRequestURI() : request.getRequestURI() + "?" + query;
+    }
+
+    /**
+     * Разбирает Accept-Encoding по RFC 7231: gzip (или x-gzip) принимается, если у него q больше нуля; если gzip
+     * не назван, решает «*». Кодировка с q=0 или с неразборчивым q считается запрещённой.
+     */
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = quality(parts);
+            } else if (name.equals("*")) {
+                any = quality(parts);
+            }
+        }
+        Double q = gzip != null ? gzip : any;
+        return q != null && q > 0;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 2 && parameter.substring(0, 2).equalsIgnoreCase("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static byte[] gzip(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Entry {
+        private final String etag;
+        private final byte[] json;
+        private final byte[] gzip;
+
+        private Entry(String etag, byte[] json, byte[] gzip) {
+            this.etag = etag;
+            this.json = json;
+            this.gzip = gzip;
+        }
+    }
+}
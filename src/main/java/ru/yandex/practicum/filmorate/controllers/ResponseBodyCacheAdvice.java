@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * При промахе кэша ответов сохраняет тело, которое вернул метод с {@link Versioned#cached()}.
+ */
+@ControllerAdvice
+public class ResponseBodyCacheAdvice implements ResponseBodyAdvice<Object> {
+    private final ResponseBodyCache responseBodyCache;
+
+    @Autowired
+    public ResponseBodyCacheAdvice(ResponseBodyCache responseBodyCache) {
+        this.responseBodyCache = responseBodyCache;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        Versioned versioned = returnType.getMethodAnnotation(Versioned.class);
+        return versioned != null && versioned.cached();
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (body != null && request instanceof ServletServerHttpRequest) {
+            HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+            Object etag = servletRequest.getAttribute(ResponseBodyCache.ETAG_ATTRIBUTE);
+            if (etag != null) {
+                responseBodyCache.put(servletRequest, (String) etag, body);
+            }
+        }
+        return body;
+    }
+}
@@ -1,7 +1,12 @@
 package ru.yandex.practicum.filmorate.controllers;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -9,29 +14,52 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.IngestResult;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RequestMapping("/users")
 @RestController
 @Slf4j
 public class UserController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
     private UserService userService;
+    private ObjectReader friendshipReader;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.friendshipReader = objectMapper.readerFor(Friendship.class);
     }
 
+    @Versioned(EntityVersions.USERS)
     @GetMapping
     public List<User> getUsers() {
         return userService.getUsers();
     }
 
+    @Versioned(EntityVersions.USERS)
+    @GetMapping(params = "limit")
+    public ResponseEntity<List<User>> getUsers(@RequestParam(defaultValue = "0") int after,
+                                               @RequestParam int limit) {
+        List<User> users = userService.getUsers(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (users.size() == limit) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(users.get(users.size() - 1).getId()));
+        }
+        return response.body(users);
+    }
+
     @PostMapping
     public User createUser(@Valid @RequestBody User user) {
         return userService.createUser(user);
@@ -42,11 +70,13 @@ public class UserController {
         return userService.updateUser(user);
     }
 
+    @Versioned(value = EntityVersions.USERS, idVariable = "id")
     @GetMapping("/{id}")
     public User getUser(@PathVariable int id) {
         return userService.getUser(id);
     }
 
+    @Versioned(EntityVersions.USERS)
     @GetMapping("/{id}/friends")
     public List<User> getFriends(@PathVariable int id) {
         return userService.getFriends(id);
@@ -62,6 +92,20 @@ public class UserController {
         return userService.deleteFriend(id, friendId);
     }
 
+    /**
+     * Массовая загрузка заявок в друзья: JSON-массив или NDJSON записей вида {"userId": 1, "friendId": 2}.
+     */
+    @PostMapping(value = "/friends/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public IngestResult addFriends(InputStream body) throws IOException {
+        try (MappingIterator<Friendship> friendships = friendshipReader.readValues(body)) {
+            IngestResult result = userService.addFriends(friendships);
+            log.info("Массовая загрузка друзей: получено {}, добавлено {} за {} мс.",
+                    result.getReceived(), result.getApplied(), result.getElapsedMs());
+            return result;
+        }
+    }
+
+    @Versioned(EntityVersions.USERS)
     @GetMapping("/{id}/friends/common/{otherId}")
     public List<User> getCommonFriends(@PathVariable int id, @PathVariable int otherId) {
         return userService.getCommonFriends(id, otherId);
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Ответ метода помечается слабым ETag из {@link ru.yandex.practicum.filmorate.storage.EntityVersions}.
+ * Если указан idVariable, берётся версия сущности с id из этой переменной пути, иначе — версия коллекции.
+ * Для справочников (reference = true) версия меняется только между запусками приложения.
+ * С cached = true готовое тело ответа хранится в {@link ResponseBodyCache} до смены версии.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Versioned {
+    String value();
+
+    String idVariable() default "";
+
+    boolean reference() default false;
+
+    boolean cached() default false;
+}
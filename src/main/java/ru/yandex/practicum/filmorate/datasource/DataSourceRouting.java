@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * Выбор пула для текущего потока. На реплику уходят только чтения внутри методов с @ReplicaRead, вне
+ * транзакции и если клиент запроса недавно ничего не записывал. Всё остальное идёт в основную базу.
+ */
+public final class DataSourceRouting {
+    private static final ThreadLocal<Boolean> REPLICA_READ = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private static final ThreadLocal<Boolean> PINNED_TO_PRIMARY = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    public enum Route {
+        PRIMARY,
+        REPLICA
+    }
+
+    private DataSourceRouting() {
+    }
+
+    public static Route currentRoute() {
+        if (REPLICA_READ.get() && !PINNED_TO_PRIMARY.get()
+                && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Route.REPLICA;
+        }
+        return Route.PRIMARY;
+    }
+
+    /**
+     * @return прежнее значение, его нужно передать в {@link #exitReplicaRead(boolean)}
+     */
+    public static boolean enterReplicaRead() {
+        boolean previous = REPLICA_READ.get();
+        REPLICA_READ.set(Boolean.TRUE);
+        return previous;
+    }
+
+    public static void exitReplicaRead(boolean previous) {
+        REPLICA_READ.set(previous);
+    }
+
+    public static void pinToPrimary(boolean pinned) {
+        PINNED_TO_PRIMARY.set(pinned);
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return PINNED_TO_PRIMARY.get();
+    }
+
+    /**
+     * Выполняет чтение в основной базе, даже если поток сейчас читает с реплики. Нужно для загрузки кэшей:
+     * отстающая реплика иначе вернула бы в кэш строку, которую он только что сбросил после записи.
+     */
+    public static <T> T readFromPrimary(Supplier<T> read) {
+        boolean pinned = PINNED_TO_PRIMARY.get();
+        PINNED_TO_PRIMARY.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            PINNED_TO_PRIMARY.set(pinned);
+        }
+    }
+}
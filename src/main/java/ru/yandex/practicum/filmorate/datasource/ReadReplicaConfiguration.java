@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Два пула соединений — основной и для чтения с реплики — за одним маршрутизирующим DataSource.
+ * Адрес реплики задаётся filmorate.datasource.replica.url; по умолчанию это тот же файл H2, так что
+ * отдельный пул читает ту же базу без отставания, а чтения не занимают соединения записей.
+ */
+@Configuration
+@ConditionalOnProperty(name = "filmorate.datasource.replica.enabled", havingValue = "true")
+public class ReadReplicaConfiguration implements WebMvcConfigurer {
+    private final Duration stickyWindow;
+    private final long maxClients;
+
+    public ReadReplicaConfiguration(
+            @Value("${filmorate.datasource.replica.sticky-window-ms:2000}") long stickyWindowMs,
+            @Value("${filmorate.datasource.replica.sticky-max-clients:100000}") long maxClients) {
+        this.stickyWindow = Duration.ofMillis(stickyWindowMs);
+        this.maxClients = maxClients;
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public HikariDataSource replicaDataSource(
+            DataSourceProperties properties,
+            @Value("${filmorate.datasource.replica.url:}") String url,
+            @Value("${filmorate.datasource.replica.maximum-pool-size:10}") int maximumPoolSize) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        if (!url.isBlank()) {
+            dataSource.setJdbcUrl(url);
+        }
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica) {
+        return new ReadWriteRoutingDataSource(primary, replica);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ReadYourWritesInterceptor(stickyWindow, maxClients));
+    }
+}
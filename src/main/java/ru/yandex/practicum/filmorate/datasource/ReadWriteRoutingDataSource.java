@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Отдаёт соединение основной базы или реплики в зависимости от {@link DataSourceRouting#currentRoute()}.
+ * JdbcTemplate берёт соединение на каждый запрос, поэтому маршрут определяется в момент запроса.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica) {
+        setTargetDataSources(Map.of(DataSourceRouting.Route.PRIMARY, primary,
+                DataSourceRouting.Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return DataSourceRouting.currentRoute();
+    }
+}
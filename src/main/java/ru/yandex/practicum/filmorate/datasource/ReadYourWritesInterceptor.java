@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+
+/**
+ * Чтение своих записей: после успешного изменяющего запроса клиент на время stickyWindow читает только
+ * из основной базы, чтобы не увидеть отставшую реплику. Клиент определяется заголовком X-Client-Id,
+ * а без него — адресом.
+ */
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+    static final String CLIENT_ID_HEADER = "X-Client-Id";
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReadYourWritesInterceptor(Duration stickyWindow, long maxClients) {
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(stickyWindow)
+                .maximumSize(maxClients)
+                .build();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        DataSourceRouting.pinToPrimary(recentWriters.getIfPresent(clientId(request)) != null);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        DataSourceRouting.pinToPrimary(false);
+        if (!isRead(request) && ex == null && response.getStatus() < 400) {
+            recentWriters.put(clientId(request), Boolean.TRUE);
+        }
+    }
+
+    private static boolean isRead(HttpServletRequest request) {
+        String method = request.getMethod();
+        return HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method)
+                || HttpMethod.OPTIONS.matches(method);
+    }
+
+    private static String clientId(HttpServletRequest request) {
+        String clientId = request.getHeader(CLIENT_ID_HEADER);
+        return clientId != null ? clientId : request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Aspect
+@Component
+@ConditionalOnProperty(name = "filmorate.datasource.replica.enabled", havingValue = "true")
+public class ReplicaReadAspect {
+
+    @Around("@annotation(ru.yandex.practicum.filmorate.datasource.ReplicaRead)")
+    public Object routeToReplica(ProceedingJoinPoint joinPoint) throws Throwable {
+        boolean previous = DataSourceRouting.enterReplicaRead();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            DataSourceRouting.exitReplicaRead(previous);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Measurement;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * /actuator/prometheus: все метрики MeterRegistry в текстовом формате Prometheus 0.0.4. Таймеры и
+ * распределения выводятся как summary с уже посчитанными квантилями, а их максимум — отдельным семейством
+ * *_max типа gauge сразу после всех образцов summary. Если в classpath появится
+ * micrometer-registry-prometheus, его собственная конечная точка заменит эту.
+ */
+@Component
+@WebEndpoint(id = "prometheus")
+@ConditionalOnMissingClass("io.prometheus.client.CollectorRegistry")
+public class PrometheusEndpoint {
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public PrometheusEndpoint(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @ReadOperation(produces = CONTENT_TYPE)
+    public String scrape() {
+        List<Meter> meters = meterRegistry.getMeters().stream()
+                .filter(meter -> !isDerived(meter.getId()))
+                .sorted(Comparator.comparing((Meter meter) -> meter.getId().getName())
+                        .thenComparing(meter -> meter.getId().getTags().toString()))
+                .collect(Collectors.toList());
+        StringBuilder out = new StringBuilder();
+        StringBuilder maxFamily = new StringBuilder();
+        String previous = null;
+        for (Meter meter : meters) {
+            String name = meter.getId().getName();
+            if (!name.equals(previous)) {
+                out.append(maxFamily);
+                maxFamily.setLength(0);
+            }
+            writeMeter(out, maxFamily, meter, !name.equals(previous));
+            previous = name;
+        }
+        out.append(maxFamily);
+        return out.toString();
+    }
+
+    /**
+     * @param maxFamily сюда пишутся образцы *_max; семейство выводится после всех метрик с тем же именем
+     */
+    private void writeMeter(StringBuilder out, StringBuilder maxFamily, Meter meter, boolean header) {
+        String name = sanitize(meter.getId().getName());
+        List<Tag> tags = meter.getId().getTags();
+        if (meter instanceof Timer) {
+            Timer timer = (Timer) meter;
+            writeSummary(out, maxFamily, header, name + "_seconds", tags, timer.takeSnapshot(), true);
+        } else if (meter instanceof DistributionSummary) {
+            writeSummary(out, maxFamily, header, name, tags, ((DistributionSummary) meter).takeSnapshot(), false);
+        } else if (meter instanceof Counter) {
+            writeType(out, header, name + "_total", "counter");
+            writeSample(out, name + "_total", tags, null, ((Counter) meter).count());
+        } else if (meter instanceof FunctionCounter) {
+            writeType(out, header, name + "_total", "counter");
+            writeSample(out, name + "_total", tags, null, ((FunctionCounter) meter).count());
+        } else if (meter instanceof TimeGauge) {
+            writeType(out, header, name + "_seconds", "gauge");
+            writeSample(out, name + "_seconds", tags, null, ((TimeGauge) meter).value(TimeUnit.SECONDS));
+        } else if (meter instanceof Gauge) {
+            writeType(out, header, name, "gauge");
+            writeSample(out, name, tags, null, ((Gauge) meter).value());
+        } else if (meter instanceof FunctionTimer) {
+            FunctionTimer timer = (FunctionTimer) meter;
+            writeType(out, header, name + "_seconds", "summary");
+            writeSample(out, name + "_seconds_count", tags, null, timer.count());
+            writeSample(out, name + "_seconds_sum", tags, null, timer.totalTime(TimeUnit.SECONDS));
+        } else {
+            writeType(out, header, name, "untyped");
+            for (Measurement measurement : meter.measure()) {
+                String statistic = measurement.getStatistic().getTagValueRepresentation();
+                writeSample(out, name + "_" + sanitize(statistic), tags, null, measurement.getValue());
+            }
+        }
+    }
+
+    private void writeSummary(StringBuilder out, StringBuilder maxFamily, boolean header, String name,
+                              List<Tag> tags, HistogramSnapshot snapshot, boolean seconds) {
+        writeType(out, header, name, "summary");
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            double value = seconds ? percentile.value(TimeUnit.SECONDS) : percentile.value();
+            writeSample(out, name, tags, "quantile=\"" + format(percentile.percentile()) + "\"", value);
+        }
+        writeSample(out, name + "_count", tags, null, snapshot.count());
+        writeSample(out, name + "_sum", tags, null,
+                seconds ? snapshot.total(TimeUnit.SECONDS) : snapshot.total());
+        writeType(maxFamily, header, name + "_max", "gauge");
+        writeSample(maxFamily, name + "_max", tags, null,
+                seconds ? snapshot.max(TimeUnit.SECONDS) : snapshot.max());
+    }
+
+    private static void writeType(StringBuilder out, boolean header, String name, String type) {
+        if (header) {
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+    }
+
+    private static void writeSample(StringBuilder out, String name, List<Tag> tags, String extraLabel,
+                                    double value) {
+        out.append(name);
+        if (!tags.isEmpty() || extraLabel != null) {
+            out.append('{');
+            String separator = "";
+            for (Tag tag : tags) {
+                out.append(separator).append(sanitize(tag.getKey())).append("=\"")
+                        .append(escape(tag.getValue())).append('"');
+                separator = ",";
+            }
+            if (extraLabel != null) {
+                out.append(separator).append(extraLabel);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    /**
+     * Квантили таймера регистрируются ещё и отдельными датчиками *.percentile — они уже выведены в summary.
+     */
+    private static boolean isDerived(Meter.Id id) {
+        return id.getName().endsWith(".percentile") || id.getName().endsWith(".histogram");
+    }
+
+    static String sanitize(String name) {
+        String sanitized = name.replaceAll("[^a-zA-Z0-9_:]", "_");
+        return Character.isDigit(sanitized.charAt(0)) ? "_" + sanitized : sanitized;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return Double.toString(value);
+    }
+}
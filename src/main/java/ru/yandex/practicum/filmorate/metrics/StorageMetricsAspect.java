@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Число вызовов, ошибок и время выполнения (p50/p95/p99) каждого публичного метода *DbStorage.
+ * Таймер ищется по точке соединения в ConcurrentHashMap, так что на горячем пути нет построения тегов.
+ * В теге method указаны и типы параметров, например getFilms(int,int), чтобы перегрузки не делили один таймер.
+ * Вызовы внутри одного хранилища прокси не проходят и отдельно не учитываются.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "filmorate.metrics.storage.enabled", matchIfMissing = true)
+public class StorageMetricsAspect {
+    static final String CALLS = "filmorate.storage.calls";
+    static final String ERRORS = "filmorate.storage.errors";
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<JoinPoint.StaticPart, Timer> timers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StorageMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.*(..))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer timer = timers.computeIfAbsent(joinPoint.getStaticPart(), this::createTimer);
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            meterRegistry.counter(ERRORS,
+                    "class", className(joinPoint.getStaticPart()),
+                    "method", methodName(joinPoint.getStaticPart()),
+                    "exception", e.getClass().getSimpleName()).increment();
+            throw e;
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer createTimer(JoinPoint.StaticPart staticPart) {
+        return Timer.builder(CALLS)
+                .description("Вызовы методов хранилищ")
+                .tag("class", className(staticPart))
+                .tag("method", methodName(staticPart))
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    private static String className(JoinPoint.StaticPart staticPart) {
+        return staticPart.getSignature().getDeclaringType().getSimpleName();
+    }
+
+    private static String methodName(JoinPoint.StaticPart staticPart) {
+        MethodSignature signature = (MethodSignature) staticPart.getSignature();
+        return Arrays.stream(signature.getParameterTypes())
+                .map(Class::getSimpleName)
+                .collect(Collectors.joining(",", signature.getName() + "(", ")"));
+    }
+}
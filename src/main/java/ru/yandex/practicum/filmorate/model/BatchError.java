@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Ошибка одной записи пакетной загрузки; index — номер записи во входных данных, с нуля.
+ */
+@Data
+@AllArgsConstructor
+public class BatchError {
+    private int index;
+    private String message;
+}
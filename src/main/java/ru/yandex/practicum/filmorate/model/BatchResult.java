@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Итог пакетной загрузки. ids идут в порядке входных записей, у отклонённых записей вместо id null,
+ * причина отказа — в errors.
+ */
+@Data
+public class BatchResult {
+    private int received;
+    private int created;
+    private List<Integer> ids = new ArrayList<>();
+    private List<BatchError> errors = new ArrayList<>();
+
+    public BatchResult() {
+    }
+
+    public BatchResult(int received) {
+        this.received = received;
+        for (int i = 0; i < received; i++) {
+            ids.add(null);
+        }
+    }
+
+    /**
+     * Учитывает очередную входную запись.
+     *
+     * @return номер записи
+     */
+    public int addRecord() {
+        ids.add(null);
+        return received++;
+    }
+
+    public void accept(int index, int id) {
+        ids.set(index, id);
+        created++;
+    }
+
+    public void reject(int index, String message) {
+        errors.add(new BatchError(index, message));
+    }
+
+    /**
+     * Переносит итог части загрузки; indexes.get(i) — номер в общей загрузке для записи i этой части.
+     */
+    public void merge(BatchResult part, List<Integer> indexes) {
+        for (int i = 0; i < part.getIds().size(); i++) {
+            Integer id = part.getIds().get(i);
+            if (id != null) {
+                accept(indexes.get(i), id);
+            }
+        }
+        for (BatchError error : part.getErrors()) {
+            reject(indexes.get(error.getIndex()), error.getMessage());
+        }
+    }
+}
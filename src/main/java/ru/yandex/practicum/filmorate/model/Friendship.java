@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Заявка в друзья: пользователь userId добавляет в друзья friendId.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Friendship {
+    private int userId;
+    private int friendId;
+}
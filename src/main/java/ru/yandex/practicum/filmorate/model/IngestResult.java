@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Итог массовой загрузки связей (лайков, дружбы). duplicates — повторы внутри загрузки, skipped — записи
+ * со ссылкой на несуществующий фильм или пользователя, applied — связи, которых раньше не было.
+ */
+@Data
+public class IngestResult {
+    private int received;
+    private int duplicates;
+    private int skipped;
+    private int applied;
+    private long elapsedMs;
+    private long recordsPerSecond;
+    private List<BatchError> errors = new ArrayList<>();
+
+    /**
+     * Проставляет время загрузки и пропускную способность по числу полученных записей.
+     */
+    public void finish(long startedNanos) {
+        long elapsedNanos = Math.max(System.nanoTime() - startedNanos, 1);
+        elapsedMs = elapsedNanos / 1_000_000;
+        recordsPerSecond = received * 1_000_000_000L / elapsedNanos;
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.reactive;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.datasource.DataSourceRouting;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Пул для блокирующих JDBC-вызовов неблокирующего API. Потоков столько же, сколько соединений в пуле БД,
+ * поэтому ожидающие запросы стоят в очереди, а не занимают потоки. Задача наследует привязку клиента
+ * к основной базе (чтение своих записей) от потока, который её отправил.
+ */
+@Component
+public class BlockingCallExecutor implements Executor {
+    private final ThreadPoolExecutor pool;
+
+    @Autowired
+    public BlockingCallExecutor(@Value("${filmorate.reactive.jdbc-threads:10}") int threads,
+                                @Value("${filmorate.reactive.queue-capacity:10000}") int queueCapacity) {
+        AtomicInteger number = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "jdbc-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        boolean pinned = DataSourceRouting.isPinnedToPrimary();
+        pool.execute(() -> {
+            DataSourceRouting.pinToPrimary(pinned);
+            try {
+                command.run();
+            } finally {
+                DataSourceRouting.pinToPrimary(false);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, this);
+    }
+
+    public CompletableFuture<Void> run(Runnable call) {
+        return CompletableFuture.runAsync(call, this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
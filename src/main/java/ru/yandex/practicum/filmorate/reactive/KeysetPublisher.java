@@ -0,0 +1,138 @@
+package ru.yandex.practicum.filmorate.reactive;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * Flow.Publisher поверх постраничного чтения по ключу (after, limit). Следующая страница читается только
+ * тогда, когда подписчик запросил больше, чем осталось в буфере, — так медленный потребитель останавливает
+ * чтение из БД, а в памяти держится не больше одной страницы. Страницы читаются на executor; сигналы
+ * подписчику идут последовательно, как требует спецификация Reactive Streams: даже ошибку неверного request
+ * отправляет цикл выдачи, а не поток, вызвавший request.
+ */
+public class KeysetPublisher<T> implements Flow.Publisher<T> {
+    private final PageLoader<T> loader;
+    private final ToIntFunction<T> keyOf;
+    private final Executor executor;
+    private final int pageSize;
+
+    @FunctionalInterface
+    public interface PageLoader<T> {
+        List<T> load(int after, int limit);
+    }
+
+    public KeysetPublisher(PageLoader<T> loader, ToIntFunction<T> keyOf, Executor executor, int pageSize) {
+        this.loader = loader;
+        this.keyOf = keyOf;
+        this.executor = executor;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        PageSubscription subscription = new PageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class PageSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final ArrayDeque<T> buffer = new ArrayDeque<>();
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException pendingError;
+        private boolean done;
+        private boolean lastPage;
+        private int after;
+
+        private PageSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (pendingError == null) {
+                    pendingError = new IllegalArgumentException("Запрошено неположительное число элементов: " + n);
+                }
+                schedule();
+                return;
+            }
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    cancelled = true;
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                emit();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            try {
+                while (!cancelled && !done && (pendingError != null || demand.get() > 0)) {
+                    if (pendingError != null) {
+                        fail(pendingError);
+                        return;
+                    }
+                    if (buffer.isEmpty()) {
+                        if (lastPage) {
+                            complete();
+                            return;
+                        }
+                        List<T> page = loader.load(after, pageSize);
+                        lastPage = page.size() < pageSize;
+                        if (page.isEmpty()) {
+                            complete();
+                            return;
+                        }
+                        buffer.addAll(page);
+                        after = keyOf.applyAsInt(page.get(page.size() - 1));
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(buffer.poll());
+                }
+                if (!cancelled && !done && buffer.isEmpty() && lastPage) {
+                    complete();
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void fail(RuntimeException e) {
+            done = true;
+            buffer.clear();
+            subscriber.onError(e);
+        }
+
+        private void complete() {
+            done = true;
+            subscriber.onComplete();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package ru.yandex.practicum.filmorate.reactive;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Подписчик, который пишет элементы в ответ как NDJSON неблокирующим вводом-выводом Servlet 3.1. Пока
+ * клиент не принимает данные (isReady() == false), ни один поток не ждёт: запись продолжится
+ * из onWritePossible, а новые элементы не запрашиваются, пока не записаны уже полученные. Все записи
+ * идут через один цикл drain, поэтому поток ответа никогда не используется из двух потоков сразу.
+ */
+@Slf4j
+public class NdjsonFlowWriter<T> implements Flow.Subscriber<T>, WriteListener, AsyncListener {
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream output;
+    private final ObjectWriter writer;
+    private final int batchSize;
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong outstanding = new AtomicLong();
+    private volatile Flow.Subscription subscription;
+    private volatile boolean completed;
+    private volatile Throwable error;
+    private volatile boolean finished;
+
+    private NdjsonFlowWriter(AsyncContext asyncContext, ServletOutputStream output, ObjectWriter writer,
+                             int batchSize) {
+        this.asyncContext = asyncContext;
+        this.output = output;
+        this.writer = writer;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Переводит запрос в асинхронный режим и подписывает на publisher писатель ответа.
+     */
+    public static <T> void stream(HttpServletRequest request, HttpServletResponse response,
+                                  Flow.Publisher<T> publisher, ObjectWriter writer, int batchSize,
+                                  long timeoutMs) throws IOException {
+        response.setContentType(CONTENT_TYPE);
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(timeoutMs);
+        ServletOutputStream output = response.getOutputStream();
+        NdjsonFlowWriter<T> flowWriter = new NdjsonFlowWriter<>(asyncContext, output, writer, batchSize);
+        asyncContext.addListener(flowWriter);
+        output.setWriteListener(flowWriter);
+        publisher.subscribe(flowWriter);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(T item) {
+        outstanding.decrementAndGet();
+        queue.offer(item);
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        completed = true;
+        drain();
+    }
+
+    @Override
+    public void onWritePossible() {
+        drain();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        abort(event.getThrowable());
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        abort(new IOException("Истекло время потоковой выдачи."));
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            try {
+                writeReady();
+            } catch (IOException | RuntimeException e) {
+                abort(e);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void writeReady() throws IOException {
+        while (!finished && output.isReady()) {
+            T item = queue.poll();
+            if (item == null) {
+                if (error != null) {
+                    log.warn("Потоковая выдача прервана: {}", error.getMessage());
+                    finish();
+                } else if (completed) {
+                    finish();
+                } else if (subscription != null && outstanding.get() == 0) {
+                    outstanding.addAndGet(batchSize);
+                    subscription.request(batchSize);
+                }
+                return;
+            }
+            output.write(writer.writeValueAsBytes(item));
+            output.write('\n');
+        }
+    }
+
+    private void abort(Throwable cause) {
+        if (finished) {
+            return;
+        }
+        log.debug("Клиент потоковой выдачи отключился: {}", cause == null ? null : cause.getMessage());
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+        finish();
+    }
+
+    private void finish() {
+        if (!finished) {
+            finished = true;
+            queue.clear();
+            asyncContext.complete();
+        }
+    }
+}
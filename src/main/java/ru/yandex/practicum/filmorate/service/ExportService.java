@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.datasource.ReplicaRead;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Выгрузка данных в NDJSON: по одному JSON-объекту на строку. Хранилище передаёт записи по одной, и каждая
+ * сразу пишется в JsonGenerator, поэтому расход памяти не зависит от числа строк.
+ */
+@Service
+@Slf4j
+public class ExportService {
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final ObjectWriter writer;
+
+    @Autowired
+    public ExportService(FilmStorage filmStorage, UserStorage userStorage, ObjectMapper objectMapper) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @ReplicaRead
+    public long exportFilms(OutputStream out) throws IOException {
+        return export(out, filmStorage::forEachFilm);
+    }
+
+    @ReplicaRead
+    public long exportLikes(OutputStream out) throws IOException {
+        return export(out, filmStorage::forEachLike);
+    }
+
+    @ReplicaRead
+    public long exportUsers(OutputStream out) throws IOException {
+        return export(out, userStorage::forEachUser);
+    }
+
+    @ReplicaRead
+    public long exportFriendships(OutputStream out) throws IOException {
+        return export(out, userStorage::forEachFriendship);
+    }
+
+    private <T> long export(OutputStream out, Consumer<Consumer<T>> source) throws IOException {
+        long[] count = new long[1];
+        try (JsonGenerator generator = writer.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            try {
+                source.accept(record -> {
+                    try {
+                        writer.writeValue(generator, record);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        log.info("Выгружено записей: {}.", count[0]);
+        return count[0];
+    }
+}
@@ -1,53 +1,234 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.MappingIterator;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.datasource.ReplicaRead;
+import ru.yandex.practicum.filmorate.exceptions.ElementNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchError;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.IngestResult;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class FilmService {
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+    private static final int INGEST_CHUNK_SIZE = 10_000;
+    private static final int MAX_SEARCH_LIMIT = 100;
     private FilmStorage filmStorage;
     private UserStorage userStorage;
+    private LikeWriteBuffer likeWriteBuffer;
+    private Validator validator;
 
     @Autowired
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
-                       @Qualifier("userDbStorage") UserStorage userStorage) {
+    public FilmService(FilmStorage filmStorage,
+                       UserStorage userStorage,
+                       LikeWriteBuffer likeWriteBuffer,
+                       Validator validator) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.likeWriteBuffer = likeWriteBuffer;
+        this.validator = validator;
     }
 
+    @ReplicaRead
     public List<Film> getFilms() {
         return filmStorage.getFilms();
     }
 
+    @ReplicaRead
+    public List<Film> getFilms(int after, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + ".");
+        }
+        return filmStorage.getFilms(after, limit);
+    }
+
     public Film createFilm(Film film) {
         return filmStorage.createFilm(film);
     }
 
+    /**
+     * Загружает фильмы из потока частями по IMPORT_CHUNK_SIZE, каждая часть пишется в своей транзакции.
+     * Запись, которая не разобралась или не прошла проверку, попадает в ошибки и не мешает остальным;
+     * синтаксическая ошибка JSON прерывает чтение, уже записанные части остаются.
+     */
+    public BatchResult createFilms(MappingIterator<Film> films) {
+        BatchResult result = new BatchResult();
+        List<Film> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        List<Integer> indexes = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        while (true) {
+            Film film;
+            try {
+                if (!films.hasNextValue()) {
+                    break;
+                }
+                film = films.nextValue();
+            } catch (JsonParseException e) {
+                result.reject(result.addRecord(), "Некорректный JSON: " + e.getOriginalMessage());
+                break;
+            } catch (IOException e) {
+                result.reject(result.addRecord(), "Некорректная запись: " + e.getMessage());
+                continue;
+            }
+            int index = result.addRecord();
+            Set<ConstraintViolation<Film>> violations = validator.validate(film);
+            if (!violations.isEmpty()) {
+                result.reject(index, violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining(" ")));
+                continue;
+            }
+            chunk.add(film);
+            indexes.add(index);
+            if (chunk.size() == IMPORT_CHUNK_SIZE) {
+                result.merge(filmStorage.createFilms(chunk), indexes);
+                chunk.clear();
+                indexes.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            result.merge(filmStorage.createFilms(chunk), indexes);
+        }
+        result.getErrors().sort(Comparator.comparingInt(BatchError::getIndex));
+        return result;
+    }
+
     public Film updateFilm(Film film) {
         return filmStorage.updateFilm(film);
     }
 
+    @ReplicaRead
     public Film getFilm(int id) {
         return filmStorage.getFilm(id);
     }
 
     public void addLike(int id, int userId) {
-        userStorage.getUser(userId);
-        filmStorage.addLike(id, userId);
+        checkUserExists(userId);
+        if (likeWriteBuffer.isEnabled()) {
+            filmStorage.getFilm(id);
+            likeWriteBuffer.addLike(id, userId);
+        } else {
+            filmStorage.addLike(id, userId);
+        }
     }
 
     public void deleteLike(int id, int userId) {
-        userStorage.getUser(userId);
-        filmStorage.deleteLike(id, userId);
+        checkUserExists(userId);
+        if (likeWriteBuffer.isEnabled()) {
+            filmStorage.getFilm(id);
+            likeWriteBuffer.deleteLike(id, userId);
+        } else {
+            filmStorage.deleteLike(id, userId);
+        }
+    }
+
+    /**
+     * Массово ставит лайки из потока. Повторы внутри части из INGEST_CHUNK_SIZE записей отбрасываются,
+     * лайки к несуществующим фильмам и от несуществующих пользователей пропускаются, каждая часть
+     * пишется одной пачкой с одним обновлением счётчика на фильм.
+     */
+    public IngestResult addLikes(MappingIterator<Like> likes) {
+        long started = System.nanoTime();
+        IngestResult result = new IngestResult();
+        // Отложенные одиночные лайки старше загрузки и должны лечь раньше неё.
+        likeWriteBuffer.flush();
+        Set<Like> chunk = new LinkedHashSet<>();
+        while (true) {
+            Like like;
+            try {
+                if (!likes.hasNextValue()) {
+                    break;
+                }
+                like = likes.nextValue();
+            } catch (JsonParseException e) {
+                result.getErrors().add(new BatchError(result.getReceived(), "Некорректный JSON: " +
+                        e.getOriginalMessage()));
+                break;
+            } catch (IOException e) {
+                result.getErrors().add(new BatchError(result.getReceived(), "Некорректная запись: " +
+                        e.getMessage()));
+                result.setReceived(result.getReceived() + 1);
+                continue;
+            }
+            result.setReceived(result.getReceived() + 1);
+            if (!chunk.add(like)) {
+                result.setDuplicates(result.getDuplicates() + 1);
+            } else if (chunk.size() == INGEST_CHUNK_SIZE) {
+                applyLikes(chunk, result);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            applyLikes(chunk, result);
+        }
+        result.finish(started);
+        return result;
     }
 
+    @ReplicaRead
     public List<Film> getTopFilms(int count) {
         return filmStorage.getTopFilms(count);
     }
+
+    /**
+     * Ищет фильмы, в названии или описании которых есть все слова запроса (целиком или как начало слова),
+     * и упорядочивает их по релевантности с учётом числа лайков.
+     */
+    @ReplicaRead
+    public List<Film> searchFilms(String query, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new ValidationException("Поисковый запрос не должен быть пустым.");
+        }
+        if (limit <= 0 || limit > MAX_SEARCH_LIMIT) {
+            throw new ValidationException("Размер выдачи должен быть от 1 до " + MAX_SEARCH_LIMIT + ".");
+        }
+        return filmStorage.searchFilms(query, limit);
+    }
+
+    private void applyLikes(Set<Like> chunk, IngestResult result) {
+        Set<Integer> films = filmStorage.getExistingIds(chunk.stream()
+                .map(Like::getFilmId)
+                .collect(Collectors.toSet()));
+        Set<Integer> users = userStorage.getExistingIds(chunk.stream()
+                .map(Like::getUserId)
+                .collect(Collectors.toSet()));
+        List<Like> known = new ArrayList<>(chunk.size());
+        for (Like like : chunk) {
+            if (films.contains(like.getFilmId()) && users.contains(like.getUserId())) {
+                known.add(like);
+            } else {
+                result.setSkipped(result.getSkipped() + 1);
+            }
+        }
+        if (!known.isEmpty()) {
+            Map<Integer, Integer> deltas = filmStorage.applyLikes(known, Collections.emptyList());
+            result.setApplied(result.getApplied() + deltas.values().stream().mapToInt(Integer::intValue).sum());
+        }
+    }
+
+    private void checkUserExists(int userId) {
+        if (!userStorage.exists(userId)) {
+            throw new ElementNotFoundException("Пользователь " + userId + " не найден.");
+        }
+    }
 }
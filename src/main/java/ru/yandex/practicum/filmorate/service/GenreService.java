@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.datasource.ReplicaRead;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
 
@@ -17,10 +18,12 @@ public class GenreService {
         this.genreStorage = genreStorage;
     }
 
+    @ReplicaRead
     public List<Genre> getAllGenres() {
         return genreStorage.getAllGenres();
     }
 
+    @ReplicaRead
     public Genre getGenre(int id) {
         return genreStorage.getGenre(id);
     }
@@ -0,0 +1,182 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отложенная запись лайков. События копятся в памяти по паре (фильм, пользователь): побеждает последнее,
+ * так что лайк и следующее за ним снятие лайка схлопываются в одну операцию. Накопленное сбрасывается
+ * в хранилище одной пачкой раз в flush-interval-ms или при flush-size событиях, счётчик каждого фильма
+ * обновляется один раз за сброс. Если буфер заполнен до capacity, сброс выполняет сам вызывающий поток.
+ */
+@Slf4j
+@Component
+public class LikeWriteBuffer {
+    private final FilmStorage filmStorage;
+    private final boolean enabled;
+    private final long flushIntervalMs;
+    private final int flushSize;
+    private final int capacity;
+    private final Timer flushTimer;
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private Map<Like, Boolean> pending = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public LikeWriteBuffer(FilmStorage filmStorage,
+                           MeterRegistry meterRegistry,
+                           @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                           @Value("${filmorate.likes.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+                           @Value("${filmorate.likes.write-behind.flush-size:1000}") int flushSize,
+                           @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity) {
+        this.filmStorage = filmStorage;
+        this.enabled = enabled;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushSize = flushSize;
+        this.capacity = Math.max(capacity, flushSize);
+        this.flushTimer = Timer.builder("filmorate.likes.buffer.flush")
+                .description("Время сброса накопленных лайков в хранилище")
+                .register(meterRegistry);
+        Gauge.builder("filmorate.likes.buffer.pending", this, LikeWriteBuffer::getPendingCount)
+                .description("Лайки, ожидающие записи")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "like-write-buffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Отложенная запись лайков включена: сброс раз в {} мс или по {} событий.",
+                flushIntervalMs, flushSize);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler.awaitTermination(flushIntervalMs * 2, TimeUnit.MILLISECONDS);
+        }
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void addLike(int filmId, int userId) {
+        offer(new Like(filmId, userId), true);
+    }
+
+    public void deleteLike(int filmId, int userId) {
+        offer(new Like(filmId, userId), false);
+    }
+
+    public int getPendingCount() {
+        pendingLock.lock();
+        try {
+            return pending.size();
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * Записывает всё накопленное. Параллельные вызовы выполняются по очереди.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            Map<Like, Boolean> batch;
+            pendingLock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new HashMap<>();
+            } finally {
+                pendingLock.unlock();
+            }
+            List<Like> added = new ArrayList<>();
+            List<Like> removed = new ArrayList<>();
+            batch.forEach((like, isAdded) -> (isAdded ? added : removed).add(like));
+            try {
+                flushTimer.record(() -> filmStorage.applyLikes(added, removed));
+                log.debug("Записано лайков: {}, снято: {}.", added.size(), removed.size());
+            } catch (RuntimeException e) {
+                log.error("Не удалось записать {} событий лайков, повторим при следующем сбросе.", batch.size(), e);
+                requeue(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void offer(Like like, boolean added) {
+        int size;
+        pendingLock.lock();
+        try {
+            pending.put(like, added);
+            size = pending.size();
+        } finally {
+            pendingLock.unlock();
+        }
+        if (size >= capacity) {
+            flush();
+        } else if (size >= flushSize && scheduler != null && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    private void requeue(Map<Like, Boolean> batch) {
+        int dropped = 0;
+        pendingLock.lock();
+        try {
+            for (Map.Entry<Like, Boolean> event : batch.entrySet()) {
+                // События, пришедшие во время сброса, новее и остаются в силе.
+                if (pending.containsKey(event.getKey())) {
+                    continue;
+                }
+                if (pending.size() >= capacity) {
+                    dropped++;
+                } else {
+                    pending.put(event.getKey(), event.getValue());
+                }
+            }
+        } finally {
+            pendingLock.unlock();
+        }
+        if (dropped > 0) {
+            log.error("Буфер лайков переполнен, потеряно событий: {}.", dropped);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.datasource.ReplicaRead;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
 
@@ -14,10 +15,12 @@ public class MpaService {
         this.mpaStorage = mpaStorage;
     }
 
+    @ReplicaRead
     public List<Mpa> getAllMpa() {
         return mpaStorage.getAllMpa();
     }
 
+    @ReplicaRead
     public Mpa getMpa(int id) {
         return mpaStorage.getMpa(id);
     }
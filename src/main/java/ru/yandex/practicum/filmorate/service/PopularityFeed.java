@@ -0,0 +1,203 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Общий для всех подписчиков детектор изменений топа фильмов. Раз в interval-ms он сверяет версию коллекции
+ * фильмов и, только если она изменилась, одним запросом читает топ наибольшего запрошенного размера.
+ * Подписчик получает событие, лишь когда изменился состав или порядок его первых count фильмов, так что
+ * лайки, не сдвинувшие рейтинг, событий не порождают, а любая серия изменений даёт не больше одного
+ * события за интервал. Топ читается из основной базы: отставшая реплика могла бы навсегда скрыть изменение,
+ * которое версия уже учла.
+ *
+ * <p>Планировщик только находит изменения, а пишут события подписчикам send-threads потоков отправки, так что
+ * медленный клиент не задерживает остальных. У подписчика не бывает больше одной отправки в очереди: если
+ * к следующему изменению его прежнее событие ещё не ушло, подписка завершается, и клиент переподключается.
+ */
+@Slf4j
+@Component
+public class PopularityFeed {
+    public static final String EVENT_NAME = "popular";
+    private static final int MAX_COUNT = 100;
+    private final FilmStorage filmStorage;
+    private final EntityVersions versions;
+    private final long intervalMs;
+    private final long timeoutMs;
+    private final int sendThreads;
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private volatile long checkedVersion = -1;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService sender;
+
+    @Autowired
+    public PopularityFeed(FilmStorage filmStorage,
+                          EntityVersions versions,
+                          @Value("${filmorate.films.popular-stream.interval-ms:1000}") long intervalMs,
+                          @Value("${filmorate.films.popular-stream.timeout-ms:1800000}") long timeoutMs,
+                          @Value("${filmorate.films.popular-stream.send-threads:4}") int sendThreads) {
+        this.filmStorage = filmStorage;
+        this.versions = versions;
+        this.intervalMs = intervalMs;
+        this.timeoutMs = timeoutMs;
+        this.sendThreads = sendThreads;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "popularity-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger senderNumber = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(sendThreads, runnable -> {
+            Thread thread = new Thread(runnable, "popularity-feed-send-" + senderNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        sender.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+    }
+
+    /**
+     * Подписывает клиента на изменения первых count фильмов. Первое событие с текущим топом уходит сразу.
+     */
+    public SseEmitter subscribe(int count) {
+        if (count <= 0 || count > MAX_COUNT) {
+            throw new ValidationException("Размер топа должен быть от 1 до " + MAX_COUNT + ".");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, count);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+        long version = versions.version(EntityVersions.FILMS);
+        List<Film> top = filmStorage.getTopFilms(count);
+        subscriber.ids = ids(top, count);
+        if (send(subscriber, version, top)) {
+            subscribers.add(subscriber);
+            // Проверка, прошедшая до добавления подписчика, могла учесть более новую версию без него.
+            checkedVersion = -1;
+        }
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private void check() {
+        try {
+            if (subscribers.isEmpty()) {
+                return;
+            }
+            // Версия читается до топа: изменение, попавшее между ними, будет замечено следующей проверкой.
+            long version = versions.version(EntityVersions.FILMS);
+            if (version == checkedVersion) {
+                return;
+            }
+            checkedVersion = version;
+            int maxCount = 0;
+            for (Subscriber subscriber : subscribers) {
+                maxCount = Math.max(maxCount, subscriber.count);
+            }
+            List<Film> top = filmStorage.getTopFilms(maxCount);
+            for (Subscriber subscriber : subscribers) {
+                List<Integer> ids = ids(top, subscriber.count);
+                if (!ids.equals(subscriber.ids)) {
+                    subscriber.ids = ids;
+                    sendAsync(subscriber, version, top.subList(0, ids.size()));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось проверить изменения топа фильмов: {}", e.getMessage());
+        }
+    }
+
+    private void sendAsync(Subscriber subscriber, long version, List<Film> top) {
+        if (!subscriber.sending.compareAndSet(false, true)) {
+            log.info("Подписчик топа фильмов не успевает получать события, подписка завершена.");
+            subscribers.remove(subscriber);
+            subscriber.emitter.complete();
+            return;
+        }
+        try {
+            sender.execute(() -> {
+                try {
+                    send(subscriber, version, top);
+                } finally {
+                    subscriber.sending.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            subscriber.sending.set(false);
+        }
+    }
+
+    private boolean send(Subscriber subscriber, long version, List<Film> top) {
+        try {
+            subscriber.emitter.send(SseEmitter.event()
+                    .name(EVENT_NAME)
+                    .id(String.valueOf(version))
+                    .data(top, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private static List<Integer> ids(List<Film> top, int count) {
+        int size = Math.min(count, top.size());
+        List<Integer> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(top.get(i).getId());
+        }
+        return ids;
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final int count;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile List<Integer> ids;
+
+        private Subscriber(SseEmitter emitter, int count) {
+            this.emitter = emitter;
+            this.count = count;
+        }
+    }
+}
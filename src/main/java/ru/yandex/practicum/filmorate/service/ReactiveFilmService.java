@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.reactive.BlockingCallExecutor;
+import ru.yandex.practicum.filmorate.reactive.KeysetPublisher;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Неблокирующий фасад над FilmService: вызовы хранилища выполняются на отдельном пуле JDBC-потоков,
+ * а поток запроса освобождается сразу после их постановки в очередь.
+ */
+@Service
+public class ReactiveFilmService {
+    private static final int STREAM_PAGE_SIZE = 1000;
+    private FilmService filmService;
+    private BlockingCallExecutor executor;
+
+    @Autowired
+    public ReactiveFilmService(FilmService filmService, BlockingCallExecutor executor) {
+        this.filmService = filmService;
+        this.executor = executor;
+    }
+
+    public Flow.Publisher<Film> getFilms() {
+        return new KeysetPublisher<>(filmService::getFilms, Film::getId, executor, STREAM_PAGE_SIZE);
+    }
+
+    public CompletableFuture<List<Film>> getFilms(int after, int limit) {
+        return executor.submit(() -> filmService.getFilms(after, limit));
+    }
+
+    public CompletableFuture<Film> createFilm(Film film) {
+        return executor.submit(() -> filmService.createFilm(film));
+    }
+
+    public CompletableFuture<Film> updateFilm(Film film) {
+        return executor.submit(() -> filmService.updateFilm(film));
+    }
+
+    public CompletableFuture<Film> getFilm(int id) {
+        return executor.submit(() -> filmService.getFilm(id));
+    }
+
+    public CompletableFuture<Void> addLike(int id, int userId) {
+        return executor.run(() -> filmService.addLike(id, userId));
+    }
+
+    public CompletableFuture<Void> deleteLike(int id, int userId) {
+        return executor.run(() -> filmService.deleteLike(id, userId));
+    }
+
+    public CompletableFuture<List<Film>> getTopFilms(int count) {
+        return executor.submit(() -> filmService.getTopFilms(count));
+    }
+}
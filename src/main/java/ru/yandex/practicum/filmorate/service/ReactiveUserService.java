@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.reactive.BlockingCallExecutor;
+import ru.yandex.practicum.filmorate.reactive.KeysetPublisher;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Неблокирующий фасад над UserService, см. {@link ReactiveFilmService}.
+ */
+@Service
+public class ReactiveUserService {
+    private static final int STREAM_PAGE_SIZE = 1000;
+    private UserService userService;
+    private BlockingCallExecutor executor;
+
+    @Autowired
+    public ReactiveUserService(UserService userService, BlockingCallExecutor executor) {
+        this.userService = userService;
+        this.executor = executor;
+    }
+
+    public Flow.Publisher<User> getUsers() {
+        return new KeysetPublisher<>(userService::getUsers, User::getId, executor, STREAM_PAGE_SIZE);
+    }
+
+    public CompletableFuture<List<User>> getUsers(int after, int limit) {
+        return executor.submit(() -> userService.getUsers(after, limit));
+    }
+
+    public CompletableFuture<User> createUser(User user) {
+        return executor.submit(() -> userService.createUser(user));
+    }
+
+    public CompletableFuture<User> updateUser(User user) {
+        return executor.submit(() -> userService.updateUser(user));
+    }
+
+    public CompletableFuture<User> getUser(int id) {
+        return executor.submit(() -> userService.getUser(id));
+    }
+
+    public CompletableFuture<List<User>> getFriends(int id) {
+        return executor.submit(() -> userService.getFriends(id));
+    }
+
+    public CompletableFuture<User> addFriend(int id, int friendId) {
+        return executor.submit(() -> userService.addFriend(id, friendId));
+    }
+
+    public CompletableFuture<User> deleteFriend(int id, int friendId) {
+        return executor.submit(() -> userService.deleteFriend(id, friendId));
+    }
+
+    public CompletableFuture<List<User>> getCommonFriends(int id, int otherId) {
+        return executor.submit(() -> userService.getCommonFriends(id, otherId));
+    }
+}
@@ -1,26 +1,50 @@
 package ru.yandex.practicum.filmorate.service;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.MappingIterator;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.datasource.ReplicaRead;
+import ru.yandex.practicum.filmorate.exceptions.ElementNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchError;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.IngestResult;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class UserService {
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int INGEST_CHUNK_SIZE = 10_000;
     private UserStorage userStorage;
 
     @Autowired
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage) {
+    public UserService(UserStorage userStorage) {
         this.userStorage = userStorage;
     }
 
+    @ReplicaRead
     public List<User> getUsers() {
         return userStorage.getUsers();
     }
 
+    @ReplicaRead
+    public List<User> getUsers(int after, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + ".");
+        }
+        return userStorage.getUsers(after, limit);
+    }
+
     public User createUser(User user) {
         return userStorage.createUser(user);
     }
@@ -29,23 +53,90 @@ public class UserService {
         return userStorage.updateUser(user);
     }
 
+    @ReplicaRead
     public User getUser(int id) {
         return userStorage.getUser(id);
     }
 
+    @ReplicaRead
     public List<User> getFriends(int id) {
         return userStorage.getFriends(id);
     }
 
     public User addFriend(int id, int friendId) {
+        checkUsersExist(id, friendId);
         return userStorage.addFriend(id, friendId);
     }
 
     public User deleteFriend(int id, int friendId) {
+        checkUsersExist(id, friendId);
         return userStorage.deleteFriend(id, friendId);
     }
 
+    /**
+     * Массово добавляет заявки в друзья из потока. Повторы внутри части из INGEST_CHUNK_SIZE записей
+     * отбрасываются, заявки с несуществующими пользователями пропускаются, каждая часть пишется одной пачкой.
+     */
+    public IngestResult addFriends(MappingIterator<Friendship> friendships) {
+        long started = System.nanoTime();
+        IngestResult result = new IngestResult();
+        Set<Friendship> chunk = new LinkedHashSet<>();
+        while (true) {
+            Friendship friendship;
+            try {
+                if (!friendships.hasNextValue()) {
+                    break;
+                }
+                friendship = friendships.nextValue();
+            } catch (JsonParseException e) {
+                result.getErrors().add(new BatchError(result.getReceived(), "Некорректный JSON: " +
+                        e.getOriginalMessage()));
+                break;
+            } catch (IOException e) {
+                result.getErrors().add(new BatchError(result.getReceived(), "Некорректная запись: " +
+                        e.getMessage()));
+                result.setReceived(result.getReceived() + 1);
+                continue;
+            }
+            result.setReceived(result.getReceived() + 1);
+            if (!chunk.add(friendship)) {
+                result.setDuplicates(result.getDuplicates() + 1);
+            } else if (chunk.size() == INGEST_CHUNK_SIZE) {
+                addFriends(chunk, result);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            addFriends(chunk, result);
+        }
+        result.finish(started);
+        return result;
+    }
+
+    @ReplicaRead
     public List<User> getCommonFriends(int id, int otherId) {
         return userStorage.getCommonFriends(id, otherId);
     }
+
+    private void addFriends(Set<Friendship> chunk, IngestResult result) {
+        Map<Integer, Boolean> users = new HashMap<>();
+        List<Friendship> known = new ArrayList<>(chunk.size());
+        for (Friendship friendship : chunk) {
+            if (users.computeIfAbsent(friendship.getUserId(), userStorage::exists)
+                    && users.computeIfAbsent(friendship.getFriendId(), userStorage::exists)) {
+                known.add(friendship);
+            } else {
+                result.setSkipped(result.getSkipped() + 1);
+            }
+        }
+        if (!known.isEmpty()) {
+            result.setApplied(result.getApplied() + userStorage.addFriends(known));
+        }
+    }
+
+    private void checkUsersExist(int id, int friendId) {
+        if (!userStorage.existsAll(id, friendId)) {
+            throw new ElementNotFoundException("Пользователь не найден.");
+        }
+    }
 }
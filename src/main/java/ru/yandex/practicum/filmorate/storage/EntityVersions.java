@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счётчики версий для слабых ETag: по одному на коллекцию и на каждую изменённую сущность. Их увеличивают
+ * внешние хранилища после того, как изменение стало видно читателям (в том числе после сброса кэша), поэтому
+ * версия, прочитанная до запроса данных, никогда не опережает сами данные. Метка запуска в ETag отличает
+ * счётчики разных запусков приложения.
+ */
+@Component
+public class EntityVersions {
+    public static final String FILMS = "films";
+    public static final String USERS = "users";
+    public static final String GENRES = "genres";
+    public static final String MPA = "mpa";
+    private final long epoch = System.currentTimeMillis();
+    private final ConcurrentHashMap<String, AtomicLong> collections = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Integer, Long>> entities = new ConcurrentHashMap<>();
+
+    public void bump(String kind, int... ids) {
+        ConcurrentHashMap<Integer, Long> versions = entityVersions(kind);
+        for (int id : ids) {
+            versions.merge(id, 1L, Long::sum);
+        }
+        collectionVersion(kind).incrementAndGet();
+    }
+
+    public void bump(String kind, Iterable<Integer> ids) {
+        ConcurrentHashMap<Integer, Long> versions = entityVersions(kind);
+        for (Integer id : ids) {
+            versions.merge(id, 1L, Long::sum);
+        }
+        collectionVersion(kind).incrementAndGet();
+    }
+
+    /**
+     * @return слабый ETag всей коллекции: меняется при любом изменении её сущностей
+     */
+    public String collectionTag(String kind) {
+        return "W/\"" + kind + "-" + epoch + "-" + collectionVersion(kind).get() + "\"";
+    }
+
+    /**
+     * @return текущий номер версии коллекции, чтобы дешёво проверить, менялось ли в ней что-нибудь
+     */
+    public long version(String kind) {
+        return collectionVersion(kind).get();
+    }
+
+    public String entityTag(String kind, int id) {
+        return "W/\"" + kind + "-" + id + "-" + epoch + "-" + entityVersions(kind).getOrDefault(id, 0L) + "\"";
+    }
+
+    /**
+     * @return слабый ETag справочника, который меняется только миграциями, то есть между запусками
+     */
+    public String staticTag(String kind) {
+        return "W/\"" + kind + "-" + epoch + "\"";
+    }
+
+    private AtomicLong collectionVersion(String kind) {
+        return collections.computeIfAbsent(kind, name -> new AtomicLong());
+    }
+
+    private ConcurrentHashMap<Integer, Long> entityVersions(String kind) {
+        return entities.computeIfAbsent(kind, name -> new ConcurrentHashMap<>());
+    }
+}
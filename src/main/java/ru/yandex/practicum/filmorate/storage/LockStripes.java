@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Фиксированный набор ReentrantLock, выбираемый по id. В отличие от synchronized и блокировок корзин
+ * ConcurrentHashMap, ожидание на ReentrantLock не закрепляет виртуальный поток за несущим, поэтому под ним
+ * можно выполнять JDBC-вызовы.
+ */
+public final class LockStripes {
+    private final ReentrantLock[] locks;
+
+    public LockStripes(int stripes) {
+        locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public ReentrantLock forKey(int id) {
+        return locks[Math.floorMod(id, locks.length)];
+    }
+
+    /**
+     * Полоса неупорядоченной пары: (a, b) и (b, a) всегда попадают в одну полосу.
+     */
+    public ReentrantLock forPair(int a, int b) {
+        return forKey(pairKey(a, b));
+    }
+
+    public static int pairKey(int a, int b) {
+        return 31 * Math.min(a, b) + Math.max(a, b);
+    }
+
+    /**
+     * Полосы набора ключей без повторов, в порядке номеров: если все берут несколько полос в этом порядке,
+     * взаимной блокировки не бывает. Отпускать их нужно в обратном порядке.
+     */
+    public List<ReentrantLock> forKeys(int[] ids) {
+        boolean[] used = new boolean[locks.length];
+        for (int id : ids) {
+            used[Math.floorMod(id, locks.length)] = true;
+        }
+        List<ReentrantLock> ordered = new ArrayList<>();
+        for (int i = 0; i < locks.length; i++) {
+            if (used[i]) {
+                ordered.add(locks[i]);
+            }
+        }
+        return ordered;
+    }
+}
@@ -0,0 +1,212 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.datasource.DataSourceRouting;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.LockStripes;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.function.Consumer;
+
+/**
+ * Кэш фильмов по id поверх FilmDbStorage (Caffeine, вытеснение W-TinyLFU). Закэшированные фильмы
+ * не изменяются: лайк заменяет запись копией с новым счётчиком, обновление фильма удаляет запись.
+ * Загрузка фильма в кэш и изменения фильма идут под одной полосой LockStripes, а не внутри compute кэша:
+ * так загрузка не положит в кэш счётчик, устаревший из-за параллельного лайка, а JDBC-вызов не держит
+ * монитор и не закрепляет виртуальный поток. Версии фильмов для ETag увеличиваются только после того,
+ * как кэш приведён в соответствие с базой; поисковый индекс к этому моменту уже обновлён делегатом под той же
+ * полосой. Промах кэша всегда читается из основной базы, а не с реплики.
+ */
+@Slf4j
+@Component
+@Primary
+@Profile("!in-memory")
+public class CachedFilmStorage implements FilmStorage {
+    private static final int LOCK_STRIPES = 256;
+    private final FilmStorage delegate;
+    private final Cache<Integer, Film> films;
+    private final EntityVersions versions;
+    private final LockStripes filmLocks = new LockStripes(LOCK_STRIPES);
+
+    @Autowired
+    public CachedFilmStorage(@Qualifier("filmDbStorage") FilmStorage delegate,
+                             EntityVersions versions,
+                             MeterRegistry meterRegistry,
+                             @Value("${filmorate.films.cache.max-entries:10000}") long maxEntries) {
+        this.delegate = delegate;
+        this.versions = versions;
+        this.films = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, films, "films");
+        Gauge.builder("filmorate.films.cache.max-entries", () -> maxEntries)
+                .description("Максимальное число фильмов в кэше")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<Film> getFilms() {
+        return delegate.getFilms();
+    }
+
+    @Override
+    public List<Film> getFilms(int after, int limit) {
+        return delegate.getFilms(after, limit);
+    }
+
+    @Override
+    public Film createFilm(Film film) {
+        Film created = delegate.createFilm(film);
+        versions.bump(EntityVersions.FILMS, created.getId());
+        return created;
+    }
+
+    @Override
+    public BatchResult createFilms(List<Film> films) {
+        BatchResult result = delegate.createFilms(films);
+        if (result.getCreated() > 0) {
+            versions.bump(EntityVersions.FILMS, result.getIds().stream()
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList()));
+        }
+        return result;
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        ReentrantLock lock = filmLocks.forKey(film.getId());
+        lock.lock();
+        try {
+            return delegate.updateFilm(film);
+        } finally {
+            films.invalidate(film.getId());
+            lock.unlock();
+            versions.bump(EntityVersions.FILMS, film.getId());
+        }
+    }
+
+    @Override
+    public Film getFilm(int id) {
+        Film film = films.getIfPresent(id);
+        if (film != null) {
+            return film;
+        }
+        ReentrantLock lock = filmLocks.forKey(id);
+        lock.lock();
+        try {
+            film = films.policy().getIfPresentQuietly(id);
+            if (film == null) {
+                film = DataSourceRouting.readFromPrimary(() -> delegate.getFilm(id));
+                films.put(id, film);
+            }
+            return film;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Не заполняет кэш: для проверки существования фильмы целиком не нужны.
+     */
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> ids) {
+        return delegate.getExistingIds(ids);
+    }
+
+    @Override
+    public boolean addLike(Integer id, Integer userId) {
+        return changeLike(id, userId, true);
+    }
+
+    @Override
+    public boolean deleteLike(Integer id, Integer userId) {
+        return changeLike(id, userId, false);
+    }
+
+    @Override
+    public Map<Integer, Integer> applyLikes(Collection<Like> added, Collection<Like> removed) {
+        Map<Integer, Integer> deltas = delegate.applyLikes(added, removed);
+        // Пачка уже зафиксирована: сбрасываем записи под их полосами, а загрузка, начатая до фиксации,
+        // успеет положить старое значение раньше, чем его сбросят.
+        for (Integer id : deltas.keySet()) {
+            ReentrantLock lock = filmLocks.forKey(id);
+            lock.lock();
+            try {
+                films.invalidate(id);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (!deltas.isEmpty()) {
+            versions.bump(EntityVersions.FILMS, deltas.keySet());
+        }
+        return deltas;
+    }
+
+    @Override
+    public List<Film> getTopFilms(int count) {
+        return delegate.getTopFilms(count);
+    }
+
+    @Override
+    public List<Film> searchFilms(String query, int limit) {
+        return delegate.searchFilms(query, limit);
+    }
+
+    @Override
+    public void forEachFilm(Consumer<Film> action) {
+        delegate.forEachFilm(action);
+    }
+
+    @Override
+    public void forEachLike(Consumer<Like> action) {
+        delegate.forEachLike(action);
+    }
+
+    public long size() {
+        films.cleanUp();
+        return films.estimatedSize();
+    }
+
+    private boolean changeLike(int id, int userId, boolean add) {
+        boolean changed;
+        ReentrantLock lock = filmLocks.forKey(id);
+        // Пока запись в БД не завершилась, фильм не загрузится в кэш со старым счётчиком.
+        lock.lock();
+        try {
+            changed = add ? delegate.addLike(id, userId) : delegate.deleteLike(id, userId);
+            if (changed) {
+                films.asMap().computeIfPresent(id, (filmId, cached) -> new Film(cached.getId(), cached.getName(),
+                        cached.getDescription(), cached.getReleaseDate(), cached.getDuration(),
+                        cached.getLikesCount() + (add ? 1 : -1), cached.getGenres(), cached.getMpa()));
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (changed) {
+            versions.bump(EntityVersions.FILMS, id);
+        }
+        return changed;
+    }
+}
@@ -2,16 +2,29 @@ package ru.yandex.practicum.filmorate.storage.film;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exceptions.ElementNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -20,52 +33,98 @@ import java.sql.Statement;
 import java.sql.Types;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Repository
+@Profile("!in-memory")
 public class FilmDbStorage implements FilmStorage {
     private static final LocalDate RELEASE_DATE = LocalDate.of(1895, 12, 28);
+    private static final int GENRE_BATCH_SIZE = 500;
+    private static final int EXPORT_FETCH_SIZE = 1000;
+    private static final int IN_CHUNK_SIZE = 1000;
+    private static final String SQL_GET_FILMS = "SELECT f.* FROM films AS f ";
+    private static final String SQL_INSERT_FILM =
+            "INSERT INTO films (name, description, release_date, duration, mpa_id) VALUES (?, ?, ?, ?, ?)";
+    private static final String SQL_ADD_GENRE = "INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)";
+    private static final String SQL_ADD_LIKE = "INSERT INTO likes (film_id, user_id) SELECT ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM likes WHERE film_id = ? AND user_id = ?);";
+    private static final String SQL_DELETE_LIKE = "DELETE FROM likes WHERE film_id = ? AND user_id = ?;";
+    private static final String SQL_UPDATE_LIKES_COUNT = "UPDATE films SET likes_count = likes_count + ? " +
+            "WHERE film_id = ?;";
+    private static final String SQL_GET_GENRES = "SELECT fg.film_id, fg.genre_id FROM film_genres AS fg ";
     private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate exportTemplate;
+    private final PopularityIndex popularityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
-    public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, PopularityIndex popularityIndex, FilmSearchIndex searchIndex,
+                         GenreStorage genreStorage, MpaStorage mpaStorage) {
         this.jdbcTemplate = jdbcTemplate;
+        this.exportTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.exportTemplate.setFetchSize(EXPORT_FETCH_SIZE);
+        this.popularityIndex = popularityIndex;
+        this.searchIndex = searchIndex;
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.transactionTemplate = new TransactionTemplate(
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+    }
+
+    @PostConstruct
+    public void loadIndexes() {
+        loadPopularityIndex();
+        loadSearchIndex();
+    }
+
+    public void loadPopularityIndex() {
+        popularityIndex.load(this::getFilms);
+    }
+
+    public void loadSearchIndex() {
+        searchIndex.load(this::forEachFilm);
     }
 
     @Override
     public List<Film> getFilms() {
-        String sql = "SELECT f.*, " +
-                "m.name AS mpa_name, " +
-                "GROUP_CONCAT(CONCAT(g.genre_id, ':', g.name) SEPARATOR ', ') AS genres " +
-                "FROM films AS f " +
-                "LEFT JOIN mpa AS m ON f.mpa_id = m.mpa_id " +
-                "LEFT JOIN film_genres AS fg ON f.film_id = fg.film_id " +
-                "LEFT JOIN genres AS g ON fg.genre_id = g.genre_id " +
-                "GROUP BY f.film_id;";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs));
+        List<Film> films = jdbcTemplate.query(SQL_GET_FILMS + "ORDER BY f.film_id;",
+                (rs, rowNum) -> mapRowToFilm(rs));
+        loadGenres(films);
+        return films;
+    }
+
+    @Override
+    public List<Film> getFilms(int after, int limit) {
+        String sql = SQL_GET_FILMS + "WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?;";
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), after, limit);
+        loadGenres(films);
+        return films;
     }
 
     @Override
     public Film createFilm(Film film) {
         if (checkValid(film)) {
-            String sql = "INSERT INTO films (name, description, release_date, duration, mpa_id) VALUES (?, ?, ?, ?, ?)";
-
+            resolveReferences(film);
             KeyHolder keyHolder = new GeneratedKeyHolder();
 
             jdbcTemplate.update(connection -> {
-                PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-                ps.setString(1, film.getName());
-                ps.setString(2, film.getDescription());
-                ps.setDate(3, Date.valueOf(film.getReleaseDate()));
-                ps.setInt(4, film.getDuration());
-                if (film.getMpa() != null) {
-                    ps.setInt(5, film.getMpa().getId());
-                } else {
-                    ps.setNull(5, Types.INTEGER);
-                }
+                PreparedStatement ps = connection.prepareStatement(SQL_INSERT_FILM, Statement.RETURN_GENERATED_KEYS);
+                setFilmParameters(ps, film);
                 return ps;
             }, keyHolder);
 
@@ -73,102 +132,260 @@ public class FilmDbStorage implements FilmStorage {
 
             addGenre(film);
 
-            return new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+            Film created = new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
                     film.getDuration(), 0, film.getGenres(), film.getMpa());
+            popularityIndex.put(created);
+            searchIndex.put(created);
+            return created;
         } else {
             return null;
         }
     }
 
     @Override
-    public Film updateFilm(Film film) {
-        String sqlCheckFilm = "SELECT COUNT(*) FROM films WHERE film_id = ?;";
-        int filmCheck = jdbcTemplate.queryForObject(sqlCheckFilm, Integer.class, film.getId());
-        if (filmCheck == 0) {
-            throw new ElementNotFoundException("Объект не найден");
+    public BatchResult createFilms(List<Film> films) {
+        BatchResult result = new BatchResult(films.size());
+        List<Film> valid = new ArrayList<>(films.size());
+        List<Integer> indexes = new ArrayList<>(films.size());
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            try {
+                checkValid(film);
+                resolveReferences(film);
+                valid.add(film);
+                indexes.add(i);
+            } catch (ValidationException | ElementNotFoundException e) {
+                result.reject(i, e.getMessage());
+            }
         }
-        String sqlUpdateFilm = "UPDATE films SET name = ?, description = ?, " +
-                "release_date = ?, duration = ?, mpa_id = ? WHERE film_id = ?";
-        jdbcTemplate.update(sqlUpdateFilm, film.getName(), film.getDescription(),
-                Date.valueOf(film.getReleaseDate()), film.getDuration(),
-                film.getMpa().getId(), film.getId());
-
-        String sqlDeleteGenres = "DELETE FROM film_genres WHERE film_id = ?";
-        jdbcTemplate.update(sqlDeleteGenres, film.getId());
-
-        String sqlAddGenre = "INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)";
-        List<Object[]> batchArgs = new ArrayList<>();
-        Set<Integer> existingGenres = new HashSet<>();
-        for (Genre genre : film.getGenres()) {
-            int genreId = genre.getId();
-            if (!existingGenres.contains(genreId)) {
-                batchArgs.add(new Object[]{film.getId(), genre.getId()});
-                existingGenres.add(genreId);
+        if (valid.isEmpty()) {
+            return result;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertFilms(valid));
+        } catch (DataAccessException e) {
+            // Пачка откатилась целиком: записываем по одному, чтобы ошибка досталась только своей записи.
+            log.warn("Пачка фильмов не записалась целиком, записываем по одному: {}", e.getMessage());
+            for (int i = 0; i < valid.size(); i++) {
+                try {
+                    result.accept(indexes.get(i), createFilm(valid.get(i)).getId());
+                } catch (RuntimeException ex) {
+                    result.reject(indexes.get(i), ex.getMessage());
+                }
             }
+            return result;
         }
-        if (!batchArgs.isEmpty()) {
-            jdbcTemplate.batchUpdate(sqlAddGenre, batchArgs);
+        for (int i = 0; i < valid.size(); i++) {
+            Film film = valid.get(i);
+            film.setLikesCount(0);
+            popularityIndex.put(film);
+            searchIndex.put(film);
+            result.accept(indexes.get(i), film.getId());
         }
+        return result;
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        transactionTemplate.executeWithoutResult(status -> {
+            String sqlCheckFilm = "SELECT COUNT(*) FROM films WHERE film_id = ?;";
+            int filmCheck = jdbcTemplate.queryForObject(sqlCheckFilm, Integer.class, film.getId());
+            if (filmCheck == 0) {
+                throw new ElementNotFoundException("Объект не найден");
+            }
+            checkValid(film);
+            resolveReferences(film);
+            String sqlUpdateFilm = "UPDATE films SET name = ?, description = ?, " +
+                    "release_date = ?, duration = ?, mpa_id = ? WHERE film_id = ?";
+            jdbcTemplate.update(sqlUpdateFilm, film.getName(), film.getDescription(),
+                    Date.valueOf(film.getReleaseDate()), film.getDuration(),
+                    film.getMpa().getId(), film.getId());
+
+            String sqlDeleteGenres = "DELETE FROM film_genres WHERE film_id = ?";
+            jdbcTemplate.update(sqlDeleteGenres, film.getId());
+            addGenre(film);
+        });
+        popularityIndex.put(film);
+        searchIndex.put(film);
         return film;
     }
 
     @Override
     public Film getFilm(int id) {
-        String sql = "SELECT f.*, m.name AS mpa_name, " +
-                "GROUP_CONCAT(CONCAT(g.genre_id, ':', g.name) SEPARATOR ', ') AS genres " +
-                "FROM films AS f " +
-                "LEFT JOIN mpa AS m ON f.mpa_id = m.mpa_id " +
-                "LEFT JOIN film_genres AS fg ON f.film_id = fg.film_id " +
-                "LEFT JOIN genres AS g ON fg.genre_id = g.genre_id " +
-                "WHERE f.film_id = ?" +
-                "GROUP BY f.film_id;";
-        Film film = jdbcTemplate.queryForObject(sql, new Object[]{id}, (rs, rowNum) -> mapRowToFilm(rs));
-        if (film == null) {
+        List<Film> films = jdbcTemplate.query(SQL_GET_FILMS + "WHERE f.film_id = ?;",
+                (rs, rowNum) -> mapRowToFilm(rs), id);
+        if (films.isEmpty()) {
             throw new ElementNotFoundException("Объект не найден");
         }
-        return film;
+        loadGenres(films);
+        return films.get(0);
     }
 
     @Override
-    public void addLike(Integer id, Integer userId) {
-        String sqlGetLikes = "SELECT COUNT(*) FROM likes WHERE film_id = ? AND user_id = ?;";
-        int userLike = jdbcTemplate.queryForObject(sqlGetLikes, Integer.class, id, userId);
+    public boolean addLike(Integer id, Integer userId) {
+        boolean added = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            int inserted;
+            try {
+                inserted = jdbcTemplate.update(SQL_ADD_LIKE, id, userId, id, userId);
+            } catch (DuplicateKeyException e) {
+                // Параллельный запрос успел поставить тот же лайк.
+                inserted = 0;
+            } catch (DataIntegrityViolationException e) {
+                throw new ElementNotFoundException("Объект не найден");
+            }
+            if (inserted > 0) {
+                jdbcTemplate.update(SQL_UPDATE_LIKES_COUNT, 1, id);
+            }
+            return inserted > 0;
+        }));
+        if (added) {
+            popularityIndex.adjustLikes(id, 1);
+        }
+        return added;
+    }
 
-        if (userLike == 0) {
-            String sql = "INSERT INTO likes(user_id,film_id) VALUES (?, ?);";
-            jdbcTemplate.update(sql, userId, id);
+    @Override
+    public boolean deleteLike(Integer id, Integer userId) {
+        boolean deleted = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            int removed = jdbcTemplate.update(SQL_DELETE_LIKE, id, userId);
+            if (removed > 0) {
+                jdbcTemplate.update(SQL_UPDATE_LIKES_COUNT, -1, id);
+            }
+            return removed > 0;
+        }));
+        if (deleted) {
+            popularityIndex.adjustLikes(id, -1);
+        }
+        return deleted;
+    }
 
-            String sqlUpdateLikesCount = "UPDATE films SET likes_count = likes_count + 1 WHERE film_id = ?";
-            jdbcTemplate.update(sqlUpdateLikesCount, id);
+    @Override
+    public Map<Integer, Integer> applyLikes(Collection<Like> added, Collection<Like> removed) {
+        Map<Integer, Integer> deltas;
+        try {
+            deltas = transactionTemplate.execute(status -> applyLikesBatch(added, removed));
+        } catch (DataIntegrityViolationException e) {
+            // В пачке есть лайк к несуществующему фильму или гонка с прямой записью: применяем по одному.
+            log.warn("Пачка лайков не применилась целиком, применяем по одному: {}", e.getMessage());
+            return applyLikesOneByOne(added, removed);
         }
+        deltas.forEach(popularityIndex::adjustLikes);
+        return deltas;
     }
 
     @Override
-    public void deleteLike(Integer id, Integer userId) {
-        String sqlGetLikes = "SELECT COUNT(*) FROM likes WHERE film_id = ? AND user_id = ?;";
-        int userLike = jdbcTemplate.queryForObject(sqlGetLikes, Integer.class, id, userId);
+    public List<Film> getTopFilms(int count) {
+        if (popularityIndex.isEnabled()) {
+            loadPopularityIndex();
+            return popularityIndex.getTop(count);
+        }
+        String sql = SQL_GET_FILMS + "ORDER BY f.likes_count DESC, f.film_id LIMIT ?;";
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), count);
+        loadGenres(films);
+        return films;
+    }
 
-        if (userLike > 0) {
-            String sql = "DELETE FROM likes WHERE film_id = ? AND user_id = ?";
-            jdbcTemplate.update(sql, id, userId);
+    /**
+     * Лайки кандидатов берутся из PopularityIndex (или одним запросом, если он выключен), а в БД читаются
+     * только фильмы итоговой выдачи — одним запросом с IN и пакетной загрузкой жанров.
+     */
+    @Override
+    public List<Film> searchFilms(String query, int limit) {
+        loadSearchIndex();
+        Function<List<Integer>, Map<Integer, Integer>> likesCounts = this::getLikesCounts;
+        if (popularityIndex.isEnabled()) {
+            loadPopularityIndex();
+            likesCounts = popularityIndex::getLikesCounts;
+        }
+        List<FilmSearchIndex.Hit> hits = searchIndex.search(query, limit, likesCounts);
+        return getFilms(hits.stream().map(FilmSearchIndex.Hit::getFilmId).collect(Collectors.toList()));
+    }
 
-            String sqlUpdateLikesCount = "UPDATE films SET likes_count = likes_count - 1 WHERE film_id = ?";
-            jdbcTemplate.update(sqlUpdateLikesCount, id);
+    /**
+     * Читает фильмы вместе с жанрами одним запросом и собирает фильм из подряд идущих строк с одним film_id,
+     * так что в памяти одновременно находится только текущий фильм.
+     */
+    @Override
+    public void forEachFilm(Consumer<Film> action) {
+        String sql = "SELECT f.*, fg.genre_id FROM films AS f " +
+                "LEFT JOIN film_genres AS fg ON fg.film_id = f.film_id " +
+                "ORDER BY f.film_id, fg.genre_id;";
+        Film[] current = new Film[1];
+        exportTemplate.query(sql, rs -> {
+            int filmId = rs.getInt("film_id");
+            if (current[0] == null || current[0].getId() != filmId) {
+                if (current[0] != null) {
+                    action.accept(current[0]);
+                }
+                current[0] = mapRowToFilm(rs);
+            }
+            int genreId = rs.getInt("genre_id");
+            if (!rs.wasNull()) {
+                current[0].getGenres().add(genreStorage.getGenre(genreId));
+            }
+        });
+        if (current[0] != null) {
+            action.accept(current[0]);
         }
     }
 
     @Override
-    public List<Film> getTopFilms(int count) {
-        String sql = "SELECT f.*, m.name AS mpa_name, " +
-                "GROUP_CONCAT(CONCAT(g.genre_id, ':', g.name) SEPARATOR ', ') AS genres " +
-                "FROM films AS f " +
-                "LEFT JOIN mpa AS m ON f.mpa_id = m.mpa_id " +
-                "LEFT JOIN film_genres AS fg ON f.film_id = fg.film_id " +
-                "LEFT JOIN genres AS g ON fg.genre_id = g.genre_id " +
-                "GROUP BY f.film_id " +
-                "ORDER BY f.likes_count DESC " +
-                "LIMIT ?";
-        return jdbcTemplate.query(sql, new Object[]{count}, (rs, rowNum) -> mapRowToFilm(rs));
+    public void forEachLike(Consumer<Like> action) {
+        exportTemplate.query("SELECT film_id, user_id FROM likes ORDER BY film_id, user_id;",
+                rs -> {
+                    action.accept(new Like(rs.getInt("film_id"), rs.getInt("user_id")));
+                });
+    }
+
+    private Map<Integer, Integer> applyLikesBatch(Collection<Like> added, Collection<Like> removed) {
+        Map<Integer, Integer> deltas = new HashMap<>();
+        List<Object[]> addArgs = new ArrayList<>(added.size());
+        for (Like like : added) {
+            addArgs.add(new Object[]{like.getFilmId(), like.getUserId(), like.getFilmId(), like.getUserId()});
+        }
+        collectDeltas(deltas, added, jdbcTemplate.batchUpdate(SQL_ADD_LIKE, addArgs), 1);
+        List<Object[]> deleteArgs = new ArrayList<>(removed.size());
+        for (Like like : removed) {
+            deleteArgs.add(new Object[]{like.getFilmId(), like.getUserId()});
+        }
+        collectDeltas(deltas, removed, jdbcTemplate.batchUpdate(SQL_DELETE_LIKE, deleteArgs), -1);
+
+        deltas.values().removeIf(delta -> delta == 0);
+        List<Object[]> counterArgs = new ArrayList<>(deltas.size());
+        deltas.forEach((filmId, delta) -> counterArgs.add(new Object[]{delta, filmId}));
+        if (!counterArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_UPDATE_LIKES_COUNT, counterArgs);
+        }
+        return deltas;
+    }
+
+    private static void collectDeltas(Map<Integer, Integer> deltas, Collection<Like> likes, int[] rows, int sign) {
+        int i = 0;
+        for (Like like : likes) {
+            if (rows[i++] > 0) {
+                deltas.merge(like.getFilmId(), sign, Integer::sum);
+            }
+        }
+    }
+
+    private Map<Integer, Integer> applyLikesOneByOne(Collection<Like> added, Collection<Like> removed) {
+        Map<Integer, Integer> deltas = new HashMap<>();
+        for (Like like : added) {
+            try {
+                if (addLike(like.getFilmId(), like.getUserId())) {
+                    deltas.merge(like.getFilmId(), 1, Integer::sum);
+                }
+            } catch (ElementNotFoundException e) {
+                log.warn("Лайк пропущен, фильм {} не найден.", like.getFilmId());
+            }
+        }
+        for (Like like : removed) {
+            if (deleteLike(like.getFilmId(), like.getUserId())) {
+                deltas.merge(like.getFilmId(), -1, Integer::sum);
+            }
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        return deltas;
     }
 
     public Film mapRowToFilm(ResultSet rs) throws SQLException {
@@ -179,28 +396,137 @@ public class FilmDbStorage implements FilmStorage {
         int duration = rs.getInt("duration");
         int likesCount = rs.getInt("likes_count");
         int mpaId = rs.getInt("mpa_id");
-        String mpaName = rs.getString("mpa_name");
+        Mpa mpa = rs.wasNull() ? null : mpaStorage.getMpa(mpaId);
 
-        String genresStr = rs.getString("genres");
-        List<Genre> genres = new ArrayList<>();
-        if (!genresStr.equals(":")) {
-            String[] genreTokens = genresStr.split(", ");
-            for (String token : genreTokens) {
-                String[] parts = token.split(":");
-                int genreId = Integer.parseInt(parts[0]);
-                String genreName = parts[1];
-                Genre genre = new Genre(genreId, genreName);
+        return new Film(filmId, name, description, releaseDate, duration, likesCount, new ArrayList<>(), mpa);
+    }
 
-                genres.add(genre);
+    private void loadGenres(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        Map<Integer, Film> filmsById = new HashMap<>();
+        int minId = Integer.MAX_VALUE;
+        int maxId = Integer.MIN_VALUE;
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+            minId = Math.min(minId, film.getId());
+            maxId = Math.max(maxId, film.getId());
+        }
+        RowCallbackHandler handler = rs -> {
+            Film film = filmsById.get(rs.getInt("film_id"));
+            if (film != null) {
+                film.getGenres().add(genreStorage.getGenre(rs.getInt("genre_id")));
             }
+        };
+        // Страницы и полный список идут подряд по id: диапазон дешевле длинного IN.
+        if ((long) maxId - minId < 2L * films.size()) {
+            jdbcTemplate.query(SQL_GET_GENRES + "WHERE fg.film_id BETWEEN ? AND ? ORDER BY fg.film_id, fg.genre_id;",
+                    handler, minId, maxId);
+            return;
         }
-        Mpa mpa = new Mpa(mpaId, mpaName);
+        List<Integer> ids = new ArrayList<>(filmsById.keySet());
+        for (int from = 0; from < ids.size(); from += GENRE_BATCH_SIZE) {
+            List<Integer> batch = ids.subList(from, Math.min(from + GENRE_BATCH_SIZE, ids.size()));
+            String sql = SQL_GET_GENRES +
+                    "WHERE fg.film_id IN (" + String.join(", ", Collections.nCopies(batch.size(), "?")) + ") " +
+                    "ORDER BY fg.film_id, fg.genre_id;";
+            jdbcTemplate.query(sql, handler, batch.toArray());
+        }
+    }
 
-        return new Film(filmId, name, description, releaseDate, duration, likesCount, genres, mpa);
+    /**
+     * Фильмы с указанными id в том же порядке; id выбираются пачками по IN_CHUNK_SIZE.
+     */
+    private List<Film> getFilms(List<Integer> ids) {
+        Map<Integer, Film> found = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size()));
+            String sql = SQL_GET_FILMS + "WHERE f.film_id IN (" +
+                    String.join(", ", Collections.nCopies(chunk.size(), "?")) + ");";
+            jdbcTemplate.query(sql, rs -> {
+                Film film = mapRowToFilm(rs);
+                found.put(film.getId(), film);
+            }, chunk.toArray());
+        }
+        List<Film> films = ids.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        loadGenres(films);
+        return films;
+    }
+
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> ids) {
+        List<Integer> distinct = ids.stream().distinct().collect(Collectors.toList());
+        Set<Integer> existing = new HashSet<>();
+        for (int from = 0; from < distinct.size(); from += IN_CHUNK_SIZE) {
+            List<Integer> chunk = distinct.subList(from, Math.min(from + IN_CHUNK_SIZE, distinct.size()));
+            String sql = "SELECT film_id FROM films WHERE film_id IN (" +
+                    String.join(", ", Collections.nCopies(chunk.size(), "?")) + ");";
+            existing.addAll(jdbcTemplate.queryForList(sql, Integer.class, chunk.toArray()));
+        }
+        return existing;
+    }
+
+    private Map<Integer, Integer> getLikesCounts(List<Integer> ids) {
+        Map<Integer, Integer> likes = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size()));
+            String sql = "SELECT film_id, likes_count FROM films WHERE film_id IN (" +
+                    String.join(", ", Collections.nCopies(chunk.size(), "?")) + ");";
+            jdbcTemplate.query(sql, rs -> {
+                likes.put(rs.getInt("film_id"), rs.getInt("likes_count"));
+            }, chunk.toArray());
+        }
+        return likes;
+    }
+
+    /**
+     * Вставляет фильмы одним JDBC-пакетом, проставляет им сгенерированные id и пишет их жанры вторым пакетом.
+     */
+    private void insertFilms(List<Film> films) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(SQL_INSERT_FILM, Statement.RETURN_GENERATED_KEYS)) {
+                for (Film film : films) {
+                    setFilmParameters(ps, film);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (Film film : films) {
+                        keys.next();
+                        film.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+        List<Object[]> genreArgs = new ArrayList<>();
+        for (Film film : films) {
+            for (Genre genre : film.getGenres()) {
+                genreArgs.add(new Object[]{film.getId(), genre.getId()});
+            }
+        }
+        if (!genreArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_ADD_GENRE, genreArgs);
+        }
+    }
+
+    private static void setFilmParameters(PreparedStatement ps, Film film) throws SQLException {
+        ps.setString(1, film.getName());
+        ps.setString(2, film.getDescription());
+        ps.setDate(3, Date.valueOf(film.getReleaseDate()));
+        ps.setInt(4, film.getDuration());
+        if (film.getMpa() != null) {
+            ps.setInt(5, film.getMpa().getId());
+        } else {
+            ps.setNull(5, Types.INTEGER);
+        }
     }
 
     private void addGenre(Film film) {
-        String sqlAddGenre = "INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)";
         List<Object[]> batchArgs = new ArrayList<>();
         Set<Integer> existingGenres = new HashSet<>();
         for (Genre genre : film.getGenres()) {
@@ -211,23 +537,35 @@ public class FilmDbStorage implements FilmStorage {
             }
         }
         if (!batchArgs.isEmpty()) {
-            jdbcTemplate.batchUpdate(sqlAddGenre, batchArgs);
+            jdbcTemplate.batchUpdate(SQL_ADD_GENRE, batchArgs);
+        }
+    }
+
+    /**
+     * Подставляет общие экземпляры жанров и рейтинга из справочников, убирает повторы жанров и сортирует их по id
+     * так же, как их возвращает чтение из БД.
+     */
+    private void resolveReferences(Film film) {
+        film.setMpa(mpaStorage.getMpa(film.getMpa().getId()));
+        TreeMap<Integer, Genre> genres = new TreeMap<>();
+        for (Genre genre : film.getGenres()) {
+            genres.putIfAbsent(genre.getId(), genreStorage.getGenre(genre.getId()));
         }
+        film.setGenres(new ArrayList<>(genres.values()));
     }
 
     private boolean checkValid(Film film) {
-        String sqlGetMpaSize = "SELECT COUNT(*) FROM mpa;";
-        String sqlGetGenreSize = "SELECT COUNT(*) FROM genres;";
-        int mpaSize = jdbcTemplate.queryForObject(sqlGetMpaSize, Integer.class);
-        int genreSize = jdbcTemplate.queryForObject(sqlGetGenreSize, Integer.class);
         if (film.getReleaseDate().isBefore(RELEASE_DATE)) {
             throw new ValidationException("Фильм не мог выйти раньше 28.12.1895.");
         }
-        if (film.getMpa().getId() > mpaSize) {
+        if (film.getGenres() == null) {
+            film.setGenres(new ArrayList<>());
+        }
+        if (film.getMpa() == null || !mpaStorage.exists(film.getMpa().getId())) {
             throw new ValidationException("Такого MPA не существует");
         }
         for (Genre genre : film.getGenres()) {
-            if (genre.getId() > genreSize) {
+            if (!genreStorage.exists(genre.getId())) {
                 throw new ValidationException("Такого жанра не существует");
             }
         }
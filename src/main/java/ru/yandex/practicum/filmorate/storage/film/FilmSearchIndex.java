@@ -0,0 +1,226 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Обратный индекс по названию и описанию фильмов для полнотекстового поиска. Слова приводятся к нижнему
+ * регистру, «ё» — к «е»; словом считается любая последовательность букв и цифр, поэтому кириллица и латиница
+ * разбираются одинаково. Словарь отсортирован, и слово запроса совпадает как целиком, так и с началом слов
+ * фильма (с меньшим весом). Фильм находится, только если в нём есть все слова запроса; релевантность —
+ * BM25-подобная сумма по словам, где слово из названия весит больше слова из описания.
+ *
+ * <p>Индекс строится при старте из хранилища и обновляется самим хранилищем при создании и изменении фильма,
+ * до увеличения версии фильмов для ETag и под той же блокировкой, что и запись фильма. Пока индекс
+ * не загружен, обновления игнорируются: загрузка идёт под той же блокировкой и прочитает их из хранилища сама.
+ */
+@Slf4j
+@Component
+public class FilmSearchIndex {
+    private static final int NAME_WEIGHT = 3;
+    private static final double PREFIX_FACTOR = 0.5;
+    private static final double SATURATION = 1.2;
+    private static final int RERANK_CANDIDATES = 200;
+    private static final double LIKES_WEIGHT = 0.25;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Map<Integer, Integer>> postings = new TreeMap<>();
+    private final Map<Integer, Map<String, Integer>> documents = new HashMap<>();
+    private volatile boolean loaded;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Hit {
+        private final int filmId;
+        private final double score;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Вызывается перед каждым поиском; после загрузки возвращается сразу, не беря блокировку записи.
+     *
+     * @param loader передаёт каждый фильм хранилища переданному ему обработчику, например FilmStorage::forEachFilm
+     */
+    public void load(Consumer<Consumer<Film>> loader) {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            loader.accept(this::add);
+            loaded = true;
+            log.info("Поисковый индекс загружен: {} фильмов, {} слов.", documents.size(), postings.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет новый фильм или переиндексирует изменённый.
+     */
+    public void put(Film film) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                remove(film.getId());
+                add(film);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Лучшие по тексту RERANK_CANDIDATES совпадений переупорядочиваются с учётом лайков:
+     * score * (1 + LIKES_WEIGHT * ln(1 + лайки)).
+     *
+     * @param likesCounts число лайков по id кандидатов одним вызовом; хранилище берёт его из PopularityIndex
+     *                    или одним запросом, не читая сами фильмы
+     * @return не больше limit фильмов, содержащих все слова запроса, по убыванию итоговой оценки;
+     * пустой список, пока индекс не загружен
+     */
+    public List<Hit> search(String query, int limit,
+                            Function<List<Integer>, Map<Integer, Integer>> likesCounts) {
+        List<Hit> candidates = search(query, Math.max(limit, RERANK_CANDIDATES));
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        Map<Integer, Integer> likes = likesCounts.apply(candidates.stream()
+                .map(Hit::getFilmId)
+                .collect(Collectors.toList()));
+        List<Hit> ranked = new ArrayList<>(candidates.size());
+        for (Hit hit : candidates) {
+            int filmLikes = Math.max(likes.getOrDefault(hit.getFilmId(), 0), 0);
+            ranked.add(new Hit(hit.getFilmId(), hit.getScore() * (1 + LIKES_WEIGHT * Math.log1p(filmLikes))));
+        }
+        return top(ranked, limit);
+    }
+
+    /**
+     * @return не больше limit фильмов, содержащих все слова запроса, по убыванию релевантности текста;
+     * пустой список, пока индекс не загружен
+     */
+    public List<Hit> search(String query, int limit) {
+        Set<String> tokens = tokenize(query).keySet();
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            if (!loaded) {
+                return List.of();
+            }
+            Map<Integer, Double> scores = null;
+            for (String token : tokens) {
+                Map<Integer, Double> matched = match(token);
+                if (scores == null) {
+                    scores = matched;
+                } else {
+                    scores.keySet().retainAll(matched.keySet());
+                    scores.replaceAll((id, score) -> score + matched.get(id));
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+            List<Hit> hits = new ArrayList<>(scores.size());
+            scores.forEach((id, score) -> hits.add(new Hit(id, score)));
+            return top(hits, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<Hit> top(List<Hit> hits, int limit) {
+        hits.sort(Comparator.comparingDouble(Hit::getScore).reversed().thenComparingInt(Hit::getFilmId));
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    /**
+     * Для каждого фильма — лучший вклад среди слов словаря, совпавших с token целиком или началом.
+     */
+    private Map<Integer, Double> match(String token) {
+        Map<Integer, Double> scores = new HashMap<>();
+        NavigableMap<String, Map<Integer, Integer>> terms = postings.subMap(token, true,
+                token + Character.MAX_VALUE, false);
+        int total = documents.size();
+        for (Map.Entry<String, Map<Integer, Integer>> term : terms.entrySet()) {
+            double factor = term.getKey().length() == token.length() ? 1 : PREFIX_FACTOR;
+            int frequency = term.getValue().size();
+            double idf = Math.log(1 + (total - frequency + 0.5) / (frequency + 0.5));
+            for (Map.Entry<Integer, Integer> posting : term.getValue().entrySet()) {
+                int weight = posting.getValue();
+                double score = factor * idf * weight / (weight + SATURATION);
+                scores.merge(posting.getKey(), score, Math::max);
+            }
+        }
+        return scores;
+    }
+
+    private void add(Film film) {
+        Map<String, Integer> terms = tokenize(film.getName());
+        terms.replaceAll((term, count) -> count * NAME_WEIGHT);
+        tokenize(film.getDescription()).forEach((term, count) -> terms.merge(term, count, Integer::sum));
+        documents.put(film.getId(), terms);
+        terms.forEach((term, weight) -> postings.computeIfAbsent(term, key -> new HashMap<>())
+                .put(film.getId(), weight));
+    }
+
+    private void remove(int filmId) {
+        Map<String, Integer> terms = documents.remove(filmId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms.keySet()) {
+            Map<Integer, Integer> films = postings.get(term);
+            films.remove(filmId);
+            if (films.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    /**
+     * @return слова текста с числом вхождений каждого
+     */
+    private static Map<String, Integer> tokenize(String text) {
+        Map<String, Integer> terms = new HashMap<>();
+        if (text == null) {
+            return terms;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.merge(normalized.substring(start, i), 1, Integer::sum);
+                start = -1;
+            }
+        }
+        return terms;
+    }
+}
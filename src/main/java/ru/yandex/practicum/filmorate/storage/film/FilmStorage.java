@@ -1,21 +1,75 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     List<Film> getFilms();
 
+    List<Film> getFilms(int after, int limit);
+
     Film createFilm(Film film);
 
+    /**
+     * Создаёт пачку фильмов. Фильм, не прошедший проверку, не мешает записи остальных.
+     *
+     * @return id созданных фильмов и ошибки с номерами записей внутри пачки
+     */
+    BatchResult createFilms(List<Film> films);
+
     Film updateFilm(Film film);
 
     Film getFilm(int id);
 
-    void addLike(Integer id, Integer userId);
+    /**
+     * @return те из ids, для которых фильм существует
+     */
+    Set<Integer> getExistingIds(Collection<Integer> ids);
+
+    /**
+     * Ставит лайк, если его ещё нет.
+     *
+     * @return true, если лайк добавлен этим вызовом
+     */
+    boolean addLike(Integer id, Integer userId);
+
+    /**
+     * Снимает лайк, если он был.
+     *
+     * @return true, если лайк удалён этим вызовом
+     */
+    boolean deleteLike(Integer id, Integer userId);
 
-    void deleteLike(Integer id, Integer userId);
+    /**
+     * Применяет пачку лайков и снятий лайков разом. Лайки к несуществующим фильмам пропускаются.
+     *
+     * @return изменение счётчика лайков по каждому затронутому фильму
+     */
+    Map<Integer, Integer> applyLikes(Collection<Like> added, Collection<Like> removed);
 
     List<Film> getTopFilms(int count);
+
+    /**
+     * Полнотекстовый поиск по названию и описанию, см. {@link FilmSearchIndex}.
+     *
+     * @return не больше limit фильмов по убыванию релевантности с учётом лайков
+     */
+    List<Film> searchFilms(String query, int limit);
+
+    /**
+     * Передаёт все фильмы по порядку id по одному, не собирая их в список.
+     */
+    void forEachFilm(Consumer<Film> action);
+
+    /**
+     * Передаёт все лайки по одному, не собирая их в список.
+     */
+    void forEachLike(Consumer<Like> action);
 }
@@ -1,25 +1,61 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.ElementNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+/**
+ * Хранилище фильмов в памяти для профиля in-memory. Лайки фильма — IntHashSet id пользователей под
+ * ReentrantLock фильма: лайк, снятие лайка и обновление фильма выполняются под ней, поэтому счётчик всегда
+ * равен размеру множества. ReentrantLock, а не synchronized — чтобы ожидание не закрепляло виртуальный поток.
+ * Рейтинг по лайкам и поиск держат собственные PopularityIndex и FilmSearchIndex. Версии для ETag
+ * увеличиваются после изменения.
+ */
 @Slf4j
 @Component
+@Profile("in-memory")
 public class InMemoryFilmStorage implements FilmStorage {
     private static final LocalDate RELEASE_DATE = LocalDate.of(1895, 12, 28);
-    private HashMap<Integer, Film> films = new HashMap<>();
-    private HashMap<Integer, List<Integer>> filmLikes = new HashMap<>();
-    private int filmId;
+    private final ConcurrentSkipListMap<Integer, Film> films = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Integer, Likes> filmLikes = new ConcurrentHashMap<>();
+    private final PopularityIndex popularityIndex = new PopularityIndex(true);
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+    private final AtomicInteger filmId = new AtomicInteger();
+    private final EntityVersions versions;
+
+    public InMemoryFilmStorage() {
+        this(new EntityVersions());
+    }
+
+    @Autowired
+    public InMemoryFilmStorage(EntityVersions versions) {
+        this.versions = versions;
+        popularityIndex.load(Collections::emptyList);
+        searchIndex.load(action -> {
+        });
+    }
 
     @Override
     public List<Film> getFilms() {
@@ -27,26 +63,55 @@ public class InMemoryFilmStorage implements FilmStorage {
         return new ArrayList<>(films.values());
     }
 
+    @Override
+    public List<Film> getFilms(int after, int limit) {
+        return films.tailMap(after, false).values().stream()
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Film createFilm(Film film) {
         if (checkValid(film)) {
             film.setId(getNewId());
+            film.setLikesCount(0);
             films.put(film.getId(), film);
-            filmLikes.put(film.getId(), new ArrayList<>());
+            popularityIndex.put(film);
+            searchIndex.put(film);
+            filmLikes.put(film.getId(), new Likes());
+            versions.bump(EntityVersions.FILMS, film.getId());
             log.info("Добавлен фильм: {}", film.getName());
         }
         return film;
     }
 
     @Override
-    public Film updateFilm(Film film) {
-        if (!films.containsKey(film.getId())) {
-            throw new ElementNotFoundException("Объект не найден.");
+    public BatchResult createFilms(List<Film> films) {
+        BatchResult result = new BatchResult(films.size());
+        for (int i = 0; i < films.size(); i++) {
+            try {
+                result.accept(i, createFilm(films.get(i)).getId());
+            } catch (ValidationException e) {
+                result.reject(i, e.getMessage());
+            }
         }
-        int likes = films.get(film.getId()).getLikesCount();
-        film.setLikesCount(likes);
+        return result;
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        Likes likes = getLikes(film.getId());
         if (checkValid(film)) {
-            films.put(film.getId(), film);
+            likes.lock.lock();
+            try {
+                film.setLikesCount(likes.users.size());
+                films.put(film.getId(), film);
+                popularityIndex.put(film);
+                searchIndex.put(film);
+            } finally {
+                likes.lock.unlock();
+            }
+            versions.bump(EntityVersions.FILMS, film.getId());
             log.info("Фильм {} обновлен.", film.getName());
         }
         return film;
@@ -54,43 +119,132 @@ public class InMemoryFilmStorage implements FilmStorage {
 
     @Override
     public Film getFilm(int id) {
-        if (!films.containsKey(id)) {
+        Film film = films.get(id);
+        if (film == null) {
             throw new ElementNotFoundException("Фильм " + id + " не найден.");
         }
-        return films.get(id);
+        return film;
+    }
+
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> ids) {
+        return ids.stream()
+                .filter(films::containsKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public boolean addLike(Integer id, Integer userId) {
+        Likes likes = getLikes(id);
+        likes.lock.lock();
+        try {
+            if (!likes.users.add(userId)) {
+                return false;
+            }
+            getFilm(id).setLikesCount(likes.users.size());
+            popularityIndex.adjustLikes(id, 1);
+        } finally {
+            likes.lock.unlock();
+        }
+        versions.bump(EntityVersions.FILMS, id);
+        return true;
     }
 
     @Override
-    public void addLike(Integer id, Integer userId) {
-        getFilm(id);
-        filmLikes.get(id).add(userId);
-        getFilm(id).setLikesCount(getFilm(id).getLikesCount() + 1);
+    public boolean deleteLike(Integer id, Integer userId) {
+        Likes likes = getLikes(id);
+        likes.lock.lock();
+        try {
+            if (!likes.users.remove(userId)) {
+                return false;
+            }
+            getFilm(id).setLikesCount(likes.users.size());
+            popularityIndex.adjustLikes(id, -1);
+        } finally {
+            likes.lock.unlock();
+        }
+        versions.bump(EntityVersions.FILMS, id);
+        return true;
     }
 
     @Override
-    public void deleteLike(Integer id, Integer userId) {
-        getFilm(id);
-        filmLikes.get(id).remove(userId);
-        getFilm(id).setLikesCount(getFilm(id).getLikesCount() - 1);
+    public Map<Integer, Integer> applyLikes(Collection<Like> added, Collection<Like> removed) {
+        Map<Integer, Integer> deltas = new HashMap<>();
+        for (Like like : added) {
+            if (filmLikes.containsKey(like.getFilmId()) && addLike(like.getFilmId(), like.getUserId())) {
+                deltas.merge(like.getFilmId(), 1, Integer::sum);
+            }
+        }
+        for (Like like : removed) {
+            if (filmLikes.containsKey(like.getFilmId()) && deleteLike(like.getFilmId(), like.getUserId())) {
+                deltas.merge(like.getFilmId(), -1, Integer::sum);
+            }
+        }
+        return deltas;
     }
 
     @Override
     public List<Film> getTopFilms(int count) {
-        return getFilms().stream()
-                .sorted(Comparator.comparingInt(film -> -film.getLikesCount()))
-                .limit(count)
+        return popularityIndex.getTop(count);
+    }
+
+    @Override
+    public List<Film> searchFilms(String query, int limit) {
+        return searchIndex.search(query, limit, popularityIndex::getLikesCounts).stream()
+                .map(hit -> films.get(hit.getFilmId()))
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public void forEachFilm(Consumer<Film> action) {
+        films.values().forEach(action);
+    }
+
+    @Override
+    public void forEachLike(Consumer<Like> action) {
+        for (Integer id : films.keySet()) {
+            Likes likes = filmLikes.get(id);
+            if (likes == null) {
+                continue;
+            }
+            int[] userIds;
+            likes.lock.lock();
+            try {
+                userIds = likes.users.toArray();
+            } finally {
+                likes.lock.unlock();
+            }
+            for (int userId : userIds) {
+                action.accept(new Like(id, userId));
+            }
+        }
+    }
+
+    private Likes getLikes(int id) {
+        Likes likes = filmLikes.get(id);
+        if (likes == null) {
+            throw new ElementNotFoundException("Фильм " + id + " не найден.");
+        }
+        return likes;
+    }
+
     private boolean checkValid(Film film) {
         if (film.getReleaseDate().isBefore(RELEASE_DATE)) {
             log.info("Введена некоректная дата релиза.");
             throw new ValidationException("Фильм не мог выйти раньше 28.12.1895.");
         }
+        if (film.getGenres() == null) {
+            film.setGenres(new ArrayList<>());
+        }
         return true;
     }
 
     private int getNewId() {
-        return ++filmId;
+        return filmId.incrementAndGet();
+    }
+
+    private static final class Likes {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final IntHashSet users = new IntHashSet();
     }
 }
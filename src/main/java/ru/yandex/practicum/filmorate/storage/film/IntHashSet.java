@@ -0,0 +1,116 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+/**
+ * Множество int без упаковки: открытая адресация с линейным пробированием, удаление сдвигает хвост цепочки
+ * назад, так что «надгробий» нет. Ноль служит признаком пустой ячейки и хранится отдельным флагом.
+ * Не потокобезопасно — синхронизация на стороне вызывающего.
+ */
+final class IntHashSet {
+    private static final int MIN_CAPACITY = 4;
+    private int[] keys;
+    private int mask;
+    private int size;
+    private boolean hasZero;
+
+    IntHashSet() {
+        keys = new int[MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+    }
+
+    int size() {
+        return size + (hasZero ? 1 : 0);
+    }
+
+    boolean contains(int value) {
+        if (value == 0) {
+            return hasZero;
+        }
+        for (int i = index(value); keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean add(int value) {
+        if (value == 0) {
+            boolean added = !hasZero;
+            hasZero = true;
+            return added;
+        }
+        int i = index(value);
+        while (keys[i] != 0) {
+            if (keys[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = value;
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return true;
+    }
+
+    boolean remove(int value) {
+        if (value == 0) {
+            boolean removed = hasZero;
+            hasZero = false;
+            return removed;
+        }
+        int gap = index(value);
+        while (keys[gap] != value) {
+            if (keys[gap] == 0) {
+                return false;
+            }
+            gap = (gap + 1) & mask;
+        }
+        for (int i = (gap + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            int home = index(keys[i]);
+            // Элемент остаётся на месте, если его исходная ячейка лежит в циклическом интервале (gap, i].
+            boolean stays = gap < i ? gap < home && home <= i : gap < home || home <= i;
+            if (!stays) {
+                keys[gap] = keys[i];
+                gap = i;
+            }
+        }
+        keys[gap] = 0;
+        size--;
+        return true;
+    }
+
+    int[] toArray() {
+        int[] values = new int[size()];
+        int count = 0;
+        if (hasZero) {
+            values[count++] = 0;
+        }
+        for (int value : keys) {
+            if (value != 0) {
+                values[count++] = value;
+            }
+        }
+        return values;
+    }
+
+    private int index(int value) {
+        int hash = value * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void resize(int capacity) {
+        int[] old = keys;
+        keys = new int[capacity];
+        mask = capacity - 1;
+        for (int value : old) {
+            if (value != 0) {
+                int i = index(value);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = value;
+            }
+        }
+    }
+}
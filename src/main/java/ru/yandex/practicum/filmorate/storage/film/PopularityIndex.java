@@ -0,0 +1,153 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Рейтинг фильмов по лайкам, который держится в памяти и обновляется на месте.
+ * Фильмы упорядочены по (лайки по убыванию, id по возрастанию), поэтому первые count фильмов
+ * читаются за O(count) без обращения к БД. Пока индекс не загружен, все изменения игнорируются.
+ *
+ * <p>При перестановке фильма новый ключ добавляется раньше, чем удаляется старый, так что параллельный
+ * {@link #getTop(int)} не пропустит фильм; если он увидит оба ключа, фильм попадёт в выдачу один раз.
+ * Наружу отдаются только копии фильмов.
+ */
+@Slf4j
+@Component
+public class PopularityIndex {
+    private final boolean enabled;
+    private final ConcurrentSkipListSet<Long> ranking = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<Integer, Film> films = new ConcurrentHashMap<>();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean loaded;
+
+    @Autowired
+    public PopularityIndex(@Value("${filmorate.films.popularity-index.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void load(Supplier<Collection<Film>> loader) {
+        if (!enabled || loaded) {
+            return;
+        }
+        loadLock.lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            for (Film film : loader.get()) {
+                Film copy = copy(film, film.getLikesCount());
+                films.put(copy.getId(), copy);
+                ranking.add(key(copy));
+            }
+            loaded = true;
+            log.info("Индекс популярности загружен: {} фильмов.", films.size());
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Добавляет новый фильм или заменяет данные существующего, сохраняя уже учтённые лайки.
+     */
+    public void put(Film film) {
+        if (!loaded) {
+            return;
+        }
+        films.compute(film.getId(), (id, old) -> move(old, copy(film, old == null
+                ? film.getLikesCount() : old.getLikesCount())));
+    }
+
+    public void adjustLikes(int filmId, int delta) {
+        if (!loaded || delta == 0) {
+            return;
+        }
+        films.computeIfPresent(filmId, (id, old) -> move(old, copy(old, old.getLikesCount() + delta)));
+    }
+
+    /**
+     * Вызывается внутри compute по id фильма, поэтому перестановки одного фильма не пересекаются.
+     */
+    private Film move(Film old, Film updated) {
+        long key = key(updated);
+        ranking.add(key);
+        if (old != null && key(old) != key) {
+            ranking.remove(key(old));
+        }
+        return updated;
+    }
+
+    /**
+     * @return учтённое число лайков по id; фильмов, которых нет в индексе, в ответе нет
+     */
+    public Map<Integer, Integer> getLikesCounts(Collection<Integer> filmIds) {
+        Map<Integer, Integer> likes = new HashMap<>();
+        for (Integer id : filmIds) {
+            Film film = films.get(id);
+            if (film != null) {
+                likes.put(id, film.getLikesCount());
+            }
+        }
+        return likes;
+    }
+
+    /**
+     * Число лайков в выдаче берётся из ключа рейтинга, а не из фильма в карте: пока фильм переставляется,
+     * карта ещё может хранить прежнюю запись.
+     */
+    public List<Film> getTop(int count) {
+        List<Film> top = new ArrayList<>(Math.max(0, Math.min(count, films.size())));
+        Set<Integer> seen = new HashSet<>();
+        for (Long key : ranking) {
+            if (top.size() >= count) {
+                break;
+            }
+            Film film = films.get(key.intValue());
+            // Во время перестановки в рейтинге на мгновение лежат оба ключа фильма — берём первый.
+            if (film != null && seen.add(film.getId())) {
+                top.add(copy(film, (int) (Integer.MAX_VALUE - (key >>> 32))));
+            }
+        }
+        return top;
+    }
+
+    private static long key(Film film) {
+        long likes = Math.max(film.getLikesCount(), 0);
+        return (Integer.MAX_VALUE - likes) << 32 | film.getId();
+    }
+
+    private static Film copy(Film film, int likesCount) {
+        List<Genre> genres = film.getGenres().stream()
+                .map(genre -> new Genre(genre.getId(), genre.getName()))
+                .collect(Collectors.toList());
+        Mpa mpa = film.getMpa() == null ? null : new Mpa(film.getMpa().getId(), film.getMpa().getName());
+        return new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), likesCount, genres, mpa);
+    }
+}
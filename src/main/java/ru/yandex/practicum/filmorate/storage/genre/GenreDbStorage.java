@@ -7,35 +7,51 @@ import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exceptions.ElementNotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
 
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Жанры — справочник из миграций, поэтому читаются из БД один раз при создании бина. Экземпляры Genre
+ * общие для всех фильмов и не должны изменяться.
+ */
 @Slf4j
 @Repository
 public class GenreDbStorage implements GenreStorage {
-    private final JdbcTemplate jdbcTemplate;
+    private final Genre[] genresById;
+    private final List<Genre> genres;
 
     @Autowired
     public GenreDbStorage(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
-    }
-
-    @Override
-    public List<Genre> getAllGenres() {
-        String sql = "SELECT * FROM genres;";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+        String sql = "SELECT genre_id, name FROM genres ORDER BY genre_id;";
+        List<Genre> loaded = jdbcTemplate.query(sql, (rs, rowNum) -> {
             int id = rs.getInt("genre_id");
             String name = rs.getString("name");
             return new Genre(id, name);
         });
+        int maxId = loaded.isEmpty() ? 0 : loaded.get(loaded.size() - 1).getId();
+        genresById = new Genre[maxId + 1];
+        for (Genre genre : loaded) {
+            genresById[genre.getId()] = genre;
+        }
+        genres = Collections.unmodifiableList(loaded);
+        log.info("Загружено жанров: {}", genres.size());
+    }
+
+    @Override
+    public List<Genre> getAllGenres() {
+        return genres;
     }
 
     @Override
     public Genre getGenre(int id) {
-        String sql = "SELECT name FROM genres WHERE genre_id = ?";
-        List<String> name = jdbcTemplate.query(sql, (rs, rowNum) -> rs.getString("name"), id);
-        if (name.isEmpty()) {
+        if (!exists(id)) {
             throw new ElementNotFoundException("Такого жанра нет");
         }
-        return new Genre(id, name.get(0));
+        return genresById[id];
+    }
+
+    @Override
+    public boolean exists(int id) {
+        return id >= 0 && id < genresById.length && genresById[id] != null;
     }
 }
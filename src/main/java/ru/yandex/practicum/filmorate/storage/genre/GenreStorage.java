@@ -8,4 +8,6 @@ public interface GenreStorage {
     List<Genre> getAllGenres();
 
     Genre getGenre(int id);
+
+    boolean exists(int id);
 }
@@ -7,35 +7,51 @@ import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exceptions.ElementNotFoundException;
 import ru.yandex.practicum.filmorate.model.Mpa;
 
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Рейтинги MPA — справочник из миграций, поэтому читаются из БД один раз при создании бина. Экземпляры Mpa
+ * общие для всех фильмов и не должны изменяться.
+ */
 @Slf4j
 @Repository
 public class MpaDbStorage implements MpaStorage {
-    private final JdbcTemplate jdbcTemplate;
+    private final Mpa[] mpaById;
+    private final List<Mpa> mpa;
 
     @Autowired
     public MpaDbStorage(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
-    }
-
-    @Override
-    public List<Mpa> getAllMpa() {
-        String sql = "SELECT * FROM mpa;";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+        String sql = "SELECT mpa_id, name FROM mpa ORDER BY mpa_id;";
+        List<Mpa> loaded = jdbcTemplate.query(sql, (rs, rowNum) -> {
             int id = rs.getInt("mpa_id");
             String name = rs.getString("name");
             return new Mpa(id, name);
         });
+        int maxId = loaded.isEmpty() ? 0 : loaded.get(loaded.size() - 1).getId();
+        mpaById = new Mpa[maxId + 1];
+        for (Mpa rating : loaded) {
+            mpaById[rating.getId()] = rating;
+        }
+        mpa = Collections.unmodifiableList(loaded);
+        log.info("Загружено рейтингов MPA: {}", mpa.size());
+    }
+
+    @Override
+    public List<Mpa> getAllMpa() {
+        return mpa;
     }
 
     @Override
     public Mpa getMpa(int id) {
-        String sql = "SELECT name FROM mpa WHERE mpa_id = ?";
-        List<String> name = jdbcTemplate.query(sql, (rs, rowNum) -> rs.getString("name"), id);
-        if (name.isEmpty()) {
+        if (!exists(id)) {
             throw new ElementNotFoundException("Рейтинг не найден");
         }
-        return new Mpa(id, name.get(0));
+        return mpaById[id];
+    }
+
+    @Override
+    public boolean exists(int id) {
+        return id >= 0 && id < mpaById.length && mpaById[id] != null;
     }
 }
@@ -8,4 +8,6 @@ public interface MpaStorage {
     List<Mpa> getAllMpa();
 
     Mpa getMpa(int id);
+
+    boolean exists(int id);
 }
@@ -0,0 +1,274 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.datasource.DataSourceRouting;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.LockStripes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш пользователей по id поверх UserDbStorage. Пользователи не удаляются, поэтому однажды подтверждённое
+ * существование id запоминается отдельно от самих записей и проверки существования на попадании в кэш
+ * обходятся без запросов. Изменение пользователя или его списка друзей удаляет запись из кэша.
+ * Общие друзья берутся из FriendGraphIndex, а сами пользователи — из кэша. Загрузка в кэш и сброс записи
+ * идут под полосой LockStripes, а не внутри compute кэша, чтобы JDBC-вызов не держал монитор. Версии для ETag
+ * увеличиваются после сброса записей. Промах кэша читается из основной базы, а не с реплики.
+ */
+@Slf4j
+@Component
+@Primary
+@Profile("!in-memory")
+public class CachedUserStorage implements UserStorage {
+    private static final int LOCK_STRIPES = 256;
+    private final UserStorage delegate;
+    private final FriendGraphIndex friendGraph;
+    private final Cache<Integer, User> users;
+    private final Cache<Integer, Boolean> knownIds;
+    private final EntityVersions versions;
+    private final LockStripes userLocks = new LockStripes(LOCK_STRIPES);
+
+    @Autowired
+    public CachedUserStorage(@Qualifier("userDbStorage") UserStorage delegate,
+                             FriendGraphIndex friendGraph,
+                             EntityVersions versions,
+                             MeterRegistry meterRegistry,
+                             @Value("${filmorate.users.cache.max-entries:10000}") long maxEntries) {
+        this.delegate = delegate;
+        this.friendGraph = friendGraph;
+        this.versions = versions;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+        this.knownIds = Caffeine.newBuilder()
+                .maximumSize(maxEntries * 10)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+        CaffeineCacheMetrics.monitor(meterRegistry, knownIds, "user-ids");
+    }
+
+    @Override
+    public List<User> getUsers() {
+        return delegate.getUsers();
+    }
+
+    @Override
+    public List<User> getUsers(int after, int limit) {
+        return delegate.getUsers(after, limit);
+    }
+
+    /**
+     * Пользователи, которых нет в кэше, читаются одним запросом делегата под полосами их id, взятыми по порядку,
+     * и кладутся в кэш.
+     */
+    @Override
+    public List<User> getUsers(int[] ids) {
+        Map<Integer, User> found = new HashMap<>(users.getAllPresent(Arrays.stream(ids).boxed()
+                .collect(Collectors.toList())));
+        int[] missing = Arrays.stream(ids).filter(id -> !found.containsKey(id)).distinct().toArray();
+        if (missing.length > 0) {
+            List<ReentrantLock> locks = userLocks.forKeys(missing);
+            locks.forEach(ReentrantLock::lock);
+            try {
+                int[] unloaded = Arrays.stream(missing).filter(id -> {
+                    User cached = users.policy().getIfPresentQuietly(id);
+                    if (cached != null) {
+                        found.put(id, cached);
+                    }
+                    return cached == null;
+                }).toArray();
+                for (User user : DataSourceRouting.readFromPrimary(() -> delegate.getUsers(unloaded))) {
+                    users.put(user.getId(), user);
+                    knownIds.put(user.getId(), Boolean.TRUE);
+                    found.put(user.getId(), user);
+                }
+            } finally {
+                for (int i = locks.size() - 1; i >= 0; i--) {
+                    locks.get(i).unlock();
+                }
+            }
+        }
+        return Arrays.stream(ids)
+                .mapToObj(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public User createUser(User user) {
+        User created = delegate.createUser(user);
+        knownIds.put(created.getId(), Boolean.TRUE);
+        versions.bump(EntityVersions.USERS, created.getId());
+        return created;
+    }
+
+    @Override
+    public User updateUser(User user) {
+        try {
+            return delegate.updateUser(user);
+        } finally {
+            invalidate(user.getId());
+            versions.bump(EntityVersions.USERS, user.getId());
+        }
+    }
+
+    @Override
+    public User getUser(int id) {
+        User user = users.getIfPresent(id);
+        if (user != null) {
+            return user;
+        }
+        ReentrantLock lock = userLocks.forKey(id);
+        lock.lock();
+        try {
+            user = users.policy().getIfPresentQuietly(id);
+            if (user == null) {
+                user = DataSourceRouting.readFromPrimary(() -> delegate.getUser(id));
+                users.put(id, user);
+            }
+        } finally {
+            lock.unlock();
+        }
+        knownIds.put(id, Boolean.TRUE);
+        return user;
+    }
+
+    @Override
+    public boolean exists(int id) {
+        if (isKnown(id)) {
+            return true;
+        }
+        boolean exists = delegate.exists(id);
+        if (exists) {
+            knownIds.put(id, Boolean.TRUE);
+        }
+        return exists;
+    }
+
+    @Override
+    public boolean existsAll(int... ids) {
+        int[] unknown = Arrays.stream(ids).filter(id -> !isKnown(id)).distinct().toArray();
+        if (unknown.length == 0) {
+            return true;
+        }
+        boolean exists = delegate.existsAll(unknown);
+        if (exists) {
+            for (int id : unknown) {
+                knownIds.put(id, Boolean.TRUE);
+            }
+        }
+        return exists;
+    }
+
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> ids) {
+        Map<Boolean, Set<Integer>> byKnown = ids.stream()
+                .collect(Collectors.partitioningBy(this::isKnown, Collectors.toSet()));
+        Set<Integer> existing = byKnown.get(true);
+        if (!byKnown.get(false).isEmpty()) {
+            Set<Integer> found = delegate.getExistingIds(byKnown.get(false));
+            found.forEach(id -> knownIds.put(id, Boolean.TRUE));
+            existing.addAll(found);
+        }
+        return existing;
+    }
+
+    @Override
+    public User addFriend(Integer id, Integer friendId) {
+        try {
+            return delegate.addFriend(id, friendId);
+        } finally {
+            invalidate(id);
+            versions.bump(EntityVersions.USERS, id, friendId);
+        }
+    }
+
+    @Override
+    public User deleteFriend(Integer id, Integer friendId) {
+        try {
+            return delegate.deleteFriend(id, friendId);
+        } finally {
+            invalidate(id);
+            versions.bump(EntityVersions.USERS, id, friendId);
+        }
+    }
+
+    @Override
+    public int addFriends(Collection<Friendship> friendships) {
+        try {
+            return delegate.addFriends(friendships);
+        } finally {
+            List<Integer> changed = new ArrayList<>(friendships.size() * 2);
+            for (Friendship friendship : friendships) {
+                invalidate(friendship.getUserId());
+                changed.add(friendship.getUserId());
+                changed.add(friendship.getFriendId());
+            }
+            versions.bump(EntityVersions.USERS, changed);
+        }
+    }
+
+    @Override
+    public List<User> getFriends(int id) {
+        return delegate.getFriends(id);
+    }
+
+    @Override
+    public List<User> getCommonFriends(Integer id, Integer otherId) {
+        if (!friendGraph.isLoaded()) {
+            return delegate.getCommonFriends(id, otherId);
+        }
+        return getUsers(friendGraph.getCommonFriends(id, otherId));
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> action) {
+        delegate.forEachUser(action);
+    }
+
+    @Override
+    public void forEachFriendship(Consumer<Friendship> action) {
+        delegate.forEachFriendship(action);
+    }
+
+    /**
+     * Загрузка, начатая до изменения в БД, держит полосу, поэтому её результат будет сброшен, а не останется в кэше.
+     */
+    private void invalidate(int id) {
+        ReentrantLock lock = userLocks.forKey(id);
+        lock.lock();
+        try {
+            users.invalidate(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isKnown(int id) {
+        return knownIds.getIfPresent(id) != null || users.getIfPresent(id) != null;
+    }
+}
@@ -0,0 +1,155 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Граф дружбы в памяти: для каждого пользователя — отсортированный массив id друзей. Массивы не изменяются
+ * на месте, изменение дружбы подменяет массив копией, поэтому читатели работают со снимком без блокировок.
+ * Общие друзья считаются слиянием двух массивов, а если один намного длиннее другого — бинарным поиском
+ * элементов короткого в длинном. Пока индекс не загружен, все изменения игнорируются.
+ */
+@Slf4j
+@Component
+public class FriendGraphIndex {
+    private static final int[] NO_FRIENDS = new int[0];
+    private static final int GALLOP_RATIO = 32;
+    private final boolean enabled;
+    private final ConcurrentHashMap<Integer, int[]> friends = new ConcurrentHashMap<>();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean loaded;
+
+    @Autowired
+    public FriendGraphIndex(@Value("${filmorate.users.friend-index.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @param loader списки друзей по id пользователя, каждый отсортирован по возрастанию
+     */
+    public void load(Supplier<Map<Integer, int[]>> loader) {
+        if (!enabled || loaded) {
+            return;
+        }
+        loadLock.lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            long links = 0;
+            for (Map.Entry<Integer, int[]> entry : loader.get().entrySet()) {
+                friends.put(entry.getKey(), entry.getValue());
+                links += entry.getValue().length;
+            }
+            loaded = true;
+            log.info("Граф дружбы загружен: {} пользователей, {} связей.", friends.size(), links);
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    public void addFriend(int id, int friendId) {
+        if (!loaded) {
+            return;
+        }
+        friends.compute(id, (userId, current) -> {
+            int[] list = current == null ? NO_FRIENDS : current;
+            int pos = Arrays.binarySearch(list, friendId);
+            if (pos >= 0) {
+                return list;
+            }
+            int insertAt = -pos - 1;
+            int[] updated = new int[list.length + 1];
+            System.arraycopy(list, 0, updated, 0, insertAt);
+            updated[insertAt] = friendId;
+            System.arraycopy(list, insertAt, updated, insertAt + 1, list.length - insertAt);
+            return updated;
+        });
+    }
+
+    public void deleteFriend(int id, int friendId) {
+        if (!loaded) {
+            return;
+        }
+        friends.computeIfPresent(id, (userId, list) -> {
+            int pos = Arrays.binarySearch(list, friendId);
+            if (pos < 0) {
+                return list;
+            }
+            if (list.length == 1) {
+                return null;
+            }
+            int[] updated = new int[list.length - 1];
+            System.arraycopy(list, 0, updated, 0, pos);
+            System.arraycopy(list, pos + 1, updated, pos, list.length - pos - 1);
+            return updated;
+        });
+    }
+
+    /**
+     * @return отсортированные id друзей; массив нельзя изменять
+     */
+    public int[] getFriends(int id) {
+        return friends.getOrDefault(id, NO_FRIENDS);
+    }
+
+    /**
+     * @return отсортированные id общих друзей двух пользователей
+     */
+    public int[] getCommonFriends(int id, int otherId) {
+        return intersect(getFriends(id), getFriends(otherId));
+    }
+
+    static int[] intersect(int[] a, int[] b) {
+        if (a.length > b.length) {
+            int[] swap = a;
+            a = b;
+            b = swap;
+        }
+        int[] common = new int[a.length];
+        int count = 0;
+        if (a.length * GALLOP_RATIO < b.length) {
+            int from = 0;
+            for (int value : a) {
+                int pos = Arrays.binarySearch(b, from, b.length, value);
+                if (pos >= 0) {
+                    common[count++] = value;
+                    from = pos + 1;
+                } else {
+                    from = -pos - 1;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    common[count++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return count == common.length ? common : Arrays.copyOf(common, count);
+    }
+}
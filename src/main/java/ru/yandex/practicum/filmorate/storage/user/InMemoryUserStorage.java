@@ -1,23 +1,54 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.ElementNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.LockStripes;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+/**
+ * Хранилище пользователей в памяти для профиля in-memory. Пользователи лежат в ConcurrentSkipListMap, id выдаёт
+ * AtomicInteger. Списки друзей — отсортированные массивы int в FriendGraphIndex: чтение идёт без блокировок,
+ * а добавление и удаление дружбы меняет оба списка пары под полосой LockStripes этой пары.
+ * Версии для ETag увеличиваются после изменения.
+ */
 @Component
+@Profile("in-memory")
 @Slf4j
 public class InMemoryUserStorage implements UserStorage {
-    private final HashMap<Integer, User> users = new HashMap<>();
-    private final HashMap<Integer, Set<Integer>> userFriends = new HashMap<>();
-    private int userId = 0;
+    private static final int LOCK_STRIPES = 64;
+    private final ConcurrentSkipListMap<Integer, User> users = new ConcurrentSkipListMap<>();
+    private final FriendGraphIndex userFriends = new FriendGraphIndex(true);
+    private final LockStripes friendLocks = new LockStripes(LOCK_STRIPES);
+    private final AtomicInteger userId = new AtomicInteger();
+    private final EntityVersions versions;
+
+    public InMemoryUserStorage() {
+        this(new EntityVersions());
+    }
+
+    @Autowired
+    public InMemoryUserStorage(EntityVersions versions) {
+        this.versions = versions;
+        userFriends.load(Collections::emptyMap);
+    }
 
     @Override
     public List<User> getUsers() {
@@ -25,11 +56,19 @@ public class InMemoryUserStorage implements UserStorage {
         return new ArrayList<>(users.values());
     }
 
+    @Override
+    public List<User> getUsers(int after, int limit) {
+        return users.tailMap(after, false).values().stream()
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public User createUser(User user) {
         if (checkValid(user)) {
             user.setId(getNewId());
             users.put(user.getId(), user);
+            versions.bump(EntityVersions.USERS, user.getId());
             log.info("Добавлен новый пользователь: " + user.getName() + ".");
         }
         return users.get(user.getId());
@@ -40,8 +79,8 @@ public class InMemoryUserStorage implements UserStorage {
         if (!users.containsKey(user.getId())) {
             throw new ElementNotFoundException("Пользователь не найден.");
         }
-        if (checkValid(user)) {
-            users.put(user.getId(), user);
+        if (checkValid(user) && users.replace(user.getId(), user) != null) {
+            versions.bump(EntityVersions.USERS, user.getId());
             log.info("Пользователь {} обновлен.", user.getId());
         }
         return user;
@@ -49,61 +88,128 @@ public class InMemoryUserStorage implements UserStorage {
 
     @Override
     public User getUser(int id) {
-        if (!users.containsKey(id)) {
+        User user = users.get(id);
+        if (user == null) {
             throw new ElementNotFoundException("Пользователь " + id + " не найден.");
         }
-        return users.get(id);
+        return user;
     }
 
     @Override
-    public User addFriend(Integer id, Integer friendId) {
-        Set<Integer> userFriendSet = userFriends.getOrDefault(id, new HashSet<>());
-        userFriendSet.add(friendId);
-        userFriends.put(id, userFriendSet);
+    public boolean exists(int id) {
+        return users.containsKey(id);
+    }
 
-        Set<Integer> friendFriendSet = userFriends.getOrDefault(friendId, new HashSet<>());
-        friendFriendSet.add(id);
-        userFriends.put(friendId, friendFriendSet);
+    @Override
+    public boolean existsAll(int... ids) {
+        for (int id : ids) {
+            if (!users.containsKey(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        return getUser(friendId);
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> ids) {
+        return ids.stream()
+                .filter(users::containsKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public User addFriend(Integer id, Integer friendId) {
+        getUser(id);
+        User friend = getUser(friendId);
+        ReentrantLock lock = friendLocks.forPair(id, friendId);
+        lock.lock();
+        try {
+            userFriends.addFriend(id, friendId);
+            userFriends.addFriend(friendId, id);
+        } finally {
+            lock.unlock();
+        }
+        versions.bump(EntityVersions.USERS, id, friendId);
+        return friend;
     }
 
     @Override
     public User deleteFriend(Integer id, Integer friendId) {
         getUser(id);
-        getUser(friendId);
-        if (userFriends.get(id).contains(friendId)) {
-            userFriends.get(id).remove(friendId);
-            userFriends.get(friendId).remove(id);
+        User friend = getUser(friendId);
+        ReentrantLock lock = friendLocks.forPair(id, friendId);
+        lock.lock();
+        try {
+            userFriends.deleteFriend(id, friendId);
+            userFriends.deleteFriend(friendId, id);
+        } finally {
+            lock.unlock();
+        }
+        versions.bump(EntityVersions.USERS, id, friendId);
+        return friend;
+    }
+
+    @Override
+    public int addFriends(Collection<Friendship> friendships) {
+        int added = 0;
+        for (Friendship friendship : friendships) {
+            int id = friendship.getUserId();
+            int friendId = friendship.getFriendId();
+            getUser(id);
+            getUser(friendId);
+            ReentrantLock lock = friendLocks.forPair(id, friendId);
+            lock.lock();
+            try {
+                if (Arrays.binarySearch(userFriends.getFriends(id), friendId) < 0) {
+                    userFriends.addFriend(id, friendId);
+                    userFriends.addFriend(friendId, id);
+                    added++;
+                    versions.bump(EntityVersions.USERS, id, friendId);
+                }
+            } finally {
+                lock.unlock();
+            }
         }
-        return getUser(friendId);
+        return added;
     }
 
     @Override
     public List<User> getFriends(int id) {
         getUser(id);
-        Set<Integer> friendsId = userFriends.get(id);
-        List<User> friends = new ArrayList<>();
-        for (Integer friendId : friendsId) {
-            friends.add(getUser(friendId));
-        }
-        return friends;
+        return getUsers(userFriends.getFriends(id));
     }
 
     @Override
     public List<User> getCommonFriends(Integer id, Integer otherId) {
         getUser(id);
         getUser(otherId);
-        Set<Integer> friends1 = userFriends.get(id);
-        Set<Integer> friends2 = userFriends.get(otherId);
-        List<User> commonFriend = new ArrayList<>();
-        if (friends1 != null && friends2 != null) {
-            friends1.retainAll(friends2);
-            for (Integer friend : friends1) {
-                commonFriend.add(getUser(friend));
+        return getUsers(userFriends.getCommonFriends(id, otherId));
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> action) {
+        users.values().forEach(action);
+    }
+
+    @Override
+    public void forEachFriendship(Consumer<Friendship> action) {
+        for (Integer id : users.keySet()) {
+            for (int friendId : userFriends.getFriends(id)) {
+                action.accept(new Friendship(id, friendId));
+            }
+        }
+    }
+
+    @Override
+    public List<User> getUsers(int[] ids) {
+        List<User> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            User user = users.get(id);
+            if (user != null) {
+                found.add(user);
             }
         }
-        return commonFriend;
+        return found;
     }
 
     private boolean checkValid(User user) {
@@ -118,6 +224,6 @@ public class InMemoryUserStorage implements UserStorage {
     }
 
     private int getNewId() {
-        return ++userId;
+        return userId.incrementAndGet();
     }
 }
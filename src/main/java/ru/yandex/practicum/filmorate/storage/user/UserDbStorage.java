@@ -2,30 +2,72 @@ package ru.yandex.practicum.filmorate.storage.user;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exceptions.ElementNotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.LockStripes;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Repository
+@Profile("!in-memory")
 public class UserDbStorage implements UserStorage {
+    private static final String SQL_UPDATE_STATUS = "UPDATE friends SET status = ? WHERE user_id = ? AND friend_id = ?;";
+    private static final String SQL_ADD_FRIEND_IF_ABSENT = "INSERT INTO friends (user_id, friend_id, status) " +
+            "SELECT ?, ?, FALSE WHERE NOT EXISTS (SELECT 1 FROM friends WHERE user_id = ? AND friend_id = ?);";
+    private static final String SQL_SYNC_STATUS = "UPDATE friends AS f SET status = EXISTS " +
+            "(SELECT 1 FROM friends AS r WHERE r.user_id = f.friend_id AND r.friend_id = f.user_id) " +
+            "WHERE f.user_id IN (?, ?) AND f.friend_id IN (?, ?);";
+    private static final int IN_CHUNK_SIZE = 1000;
+    private static final int EXPORT_FETCH_SIZE = 1000;
+    private static final int LOCK_STRIPES = 256;
     private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate exportTemplate;
+    private final FriendGraphIndex friendGraph;
+    private final TransactionTemplate transactionTemplate;
+    private final LockStripes friendLocks = new LockStripes(LOCK_STRIPES);
     private final String sqlGetUsers = "SELECT * FROM users ";
 
     @Autowired
-    public UserDbStorage(JdbcTemplate jdbcTemplate) {
+    public UserDbStorage(JdbcTemplate jdbcTemplate, FriendGraphIndex friendGraph) {
         this.jdbcTemplate = jdbcTemplate;
+        this.exportTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.exportTemplate.setFetchSize(EXPORT_FETCH_SIZE);
+        this.friendGraph = friendGraph;
+        this.transactionTemplate = new TransactionTemplate(
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+    }
+
+    @PostConstruct
+    public void loadFriendGraph() {
+        friendGraph.load(this::getFriendLinks);
     }
 
     @Override
@@ -33,6 +75,12 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query(sqlGetUsers, (rs, rowNum) -> (mapRowToUser(rs)));
     }
 
+    @Override
+    public List<User> getUsers(int after, int limit) {
+        String sql = sqlGetUsers + "WHERE user_id > ? ORDER BY user_id LIMIT ?;";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToUser(rs), after, limit);
+    }
+
     @Override
     public User createUser(User user) {
         String sql = "INSERT INTO users(email, login, name, birthday) VALUES (?, ?, ?, ?)";
@@ -68,9 +116,42 @@ public class UserDbStorage implements UserStorage {
         return user.get(0);
     }
 
+    @Override
+    public boolean exists(int id) {
+        String sql = "SELECT EXISTS (SELECT 1 FROM users WHERE user_id = ?);";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, id));
+    }
+
+    @Override
+    public boolean existsAll(int... ids) {
+        Object[] distinct = Arrays.stream(ids).distinct().boxed().toArray();
+        if (distinct.length == 0) {
+            return true;
+        }
+        String sql = "SELECT COUNT(*) FROM users WHERE user_id IN (" +
+                String.join(", ", Collections.nCopies(distinct.length, "?")) + ");";
+        Integer found = jdbcTemplate.queryForObject(sql, Integer.class, distinct);
+        return found != null && found == distinct.length;
+    }
+
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> ids) {
+        List<Integer> distinct = ids.stream().distinct().collect(Collectors.toList());
+        Set<Integer> existing = new HashSet<>();
+        for (int from = 0; from < distinct.size(); from += IN_CHUNK_SIZE) {
+            List<Integer> chunk = distinct.subList(from, Math.min(from + IN_CHUNK_SIZE, distinct.size()));
+            String sql = "SELECT user_id FROM users WHERE user_id IN (" +
+                    String.join(", ", Collections.nCopies(chunk.size(), "?")) + ");";
+            existing.addAll(jdbcTemplate.queryForList(sql, Integer.class, chunk.toArray()));
+        }
+        return existing;
+    }
+
     @Override
     public List<User> getFriends(int id) {
-        getUser(id);
+        if (!exists(id)) {
+            throw new ElementNotFoundException("Объект не найден");
+        }
         String sql = "SELECT u.* " +
                 "FROM friends AS f " +
                 "JOIN users AS u ON f.friend_id = u.user_id " +
@@ -80,6 +161,10 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public List<User> getCommonFriends(Integer id, Integer otherId) {
+        if (friendGraph.isEnabled()) {
+            loadFriendGraph();
+            return getUsers(friendGraph.getCommonFriends(id, otherId));
+        }
         String sql = "SELECT u.* " +
                 "FROM users AS u " +
                 "JOIN friends AS f1 ON f1.friend_id = u.user_id " +
@@ -89,46 +174,188 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query(sql, new Object[]{id, otherId}, (rs, rowNum) -> mapRowToUser(rs));
     }
 
+    /**
+     * Запись в БД и изменение FriendGraphIndex идут под одной полосой пары, иначе параллельные добавление
+     * и удаление одной связи могли бы зафиксироваться в БД в одном порядке, а в индексе — в другом.
+     */
     @Override
     public User addFriend(Integer id, Integer friendId) {
-        getUser(id);
-        getUser(friendId);
-        String sqlCreate = "INSERT INTO friends(user_id, friend_id, status) VALUES (?, ?, ?);";
-        String sqlUpdate = "UPDATE friends SET status = ? WHERE user_id = ? AND friend_id = ?";
-        if (!checkFriend(id, friendId)) {
-            if (checkFriend(friendId, id)) {
-                jdbcTemplate.update(sqlCreate, id, friendId, true);
-                jdbcTemplate.update(sqlUpdate, true, friendId, id);
-            } else {
-                jdbcTemplate.update(sqlCreate, id, friendId, false);
-            }
-            String sqlUpdateFriendsCount = "UPDATE users SET friends_count = friends_count + 1 WHERE user_id = ?";
-            jdbcTemplate.update(sqlUpdateFriendsCount, id);
+        ReentrantLock lock = friendLocks.forPair(id, friendId);
+        lock.lock();
+        try {
+            User result = transactionTemplate.execute(status -> addFriendRow(id, friendId));
+            friendGraph.addFriend(id, friendId);
+            return result;
+        } finally {
+            lock.unlock();
         }
-        return getUser(friendId);
     }
 
     @Override
     public User deleteFriend(Integer id, Integer friendId) {
-        getUser(id);
-        getUser(friendId);
-        String sqlDelete = "DELETE FROM friends WHERE user_id = ? AND friend_id = ?;";
-        String sqlUpdate = "UPDATE friends SET status = ? WHERE user_id = ? AND friend_id = ?";
-        if (checkFriend(id, friendId)) {
-            jdbcTemplate.update(sqlDelete, id, friendId);
-            if (checkFriend(friendId, id)) {
-                jdbcTemplate.update(sqlUpdate, false, friendId, id);
+        ReentrantLock lock = friendLocks.forPair(id, friendId);
+        lock.lock();
+        try {
+            User result = transactionTemplate.execute(status -> deleteFriendRow(id, friendId));
+            friendGraph.deleteFriend(id, friendId);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * В отличие от addFriend строки пользователей не блокируются: пачка рассчитана на загрузку данных,
+     * статус взаимности пересчитывается по фактическому содержимому friends после вставки. Полосы всех пар
+     * пачки берутся по порядку и держатся до обновления FriendGraphIndex, как в addFriend.
+     */
+    @Override
+    public int addFriends(Collection<Friendship> friendships) {
+        int[] pairs = friendships.stream()
+                .mapToInt(friendship -> LockStripes.pairKey(friendship.getUserId(), friendship.getFriendId()))
+                .toArray();
+        List<ReentrantLock> locks = friendLocks.forKeys(pairs);
+        locks.forEach(ReentrantLock::lock);
+        try {
+            List<Friendship> added = transactionTemplate.execute(status -> insertFriendships(friendships));
+            for (Friendship friendship : added) {
+                friendGraph.addFriend(friendship.getUserId(), friendship.getFriendId());
+            }
+            return added.size();
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
             }
-            String updateFriendsCountSql = "UPDATE users SET friends_count = friends_count - 1 WHERE user_id = ?";
-            jdbcTemplate.update(updateFriendsCountSql, id);
         }
-        return getUser(friendId);
     }
 
-    private boolean checkFriend(int id, int friendId) {
-        String sql = "SELECT COUNT(*) FROM friends WHERE user_id = ? AND friend_id = ?";
-        int count = jdbcTemplate.queryForObject(sql, Integer.class, id, friendId);
-        return count > 0;
+    @Override
+    public void forEachUser(Consumer<User> action) {
+        exportTemplate.query(sqlGetUsers + "ORDER BY user_id;", rs -> {
+            action.accept(mapRowToUser(rs));
+        });
+    }
+
+    @Override
+    public void forEachFriendship(Consumer<Friendship> action) {
+        exportTemplate.query("SELECT user_id, friend_id FROM friends ORDER BY user_id, friend_id;", rs -> {
+            action.accept(new Friendship(rs.getInt("user_id"), rs.getInt("friend_id")));
+        });
+    }
+
+    /**
+     * Пользователи с указанными id в том же порядке; id выбираются пачками по IN_CHUNK_SIZE.
+     */
+    @Override
+    public List<User> getUsers(int[] ids) {
+        Map<Integer, User> found = new HashMap<>();
+        for (int from = 0; from < ids.length; from += IN_CHUNK_SIZE) {
+            Object[] chunk = Arrays.stream(ids, from, Math.min(from + IN_CHUNK_SIZE, ids.length)).boxed().toArray();
+            String sql = sqlGetUsers + "WHERE user_id IN (" +
+                    String.join(", ", Collections.nCopies(chunk.length, "?")) + ");";
+            jdbcTemplate.query(sql, rs -> {
+                User user = mapRowToUser(rs);
+                found.put(user.getId(), user);
+            }, chunk);
+        }
+        return Arrays.stream(ids)
+                .mapToObj(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private Map<Integer, int[]> getFriendLinks() {
+        Map<Integer, List<Integer>> friends = new HashMap<>();
+        String sql = "SELECT user_id, friend_id FROM friends ORDER BY user_id, friend_id;";
+        jdbcTemplate.query(sql, rs -> {
+            friends.computeIfAbsent(rs.getInt("user_id"), userId -> new ArrayList<>()).add(rs.getInt("friend_id"));
+        });
+        Map<Integer, int[]> links = new HashMap<>();
+        friends.forEach((userId, ids) -> links.put(userId, ids.stream().mapToInt(Integer::intValue).toArray()));
+        return links;
+    }
+
+    private User addFriendRow(int id, int friendId) {
+        User friend = lockUsers(id, friendId);
+        String sqlCheck = "SELECT user_id, friend_id FROM friends WHERE user_id IN (?, ?) AND friend_id IN (?, ?);";
+        boolean[] links = new boolean[2];
+        jdbcTemplate.query(sqlCheck, rs -> {
+            if (rs.getInt("user_id") == id && rs.getInt("friend_id") == friendId) {
+                links[0] = true;
+            } else if (rs.getInt("user_id") == friendId && rs.getInt("friend_id") == id) {
+                links[1] = true;
+            }
+        }, id, friendId, id, friendId);
+        if (links[0]) {
+            return friend;
+        }
+        boolean mutual = links[1];
+        jdbcTemplate.update("INSERT INTO friends (user_id, friend_id, status) VALUES (?, ?, ?);",
+                id, friendId, mutual);
+        if (mutual) {
+            jdbcTemplate.update(SQL_UPDATE_STATUS, true, friendId, id);
+        }
+        jdbcTemplate.update("UPDATE users SET friends_count = friends_count + 1 WHERE user_id = ?;", id);
+        return friend;
+    }
+
+    private User deleteFriendRow(int id, int friendId) {
+        User friend = lockUsers(id, friendId);
+        int deleted = jdbcTemplate.update("DELETE FROM friends WHERE user_id = ? AND friend_id = ?;",
+                id, friendId);
+        if (deleted > 0) {
+            jdbcTemplate.update(SQL_UPDATE_STATUS, false, friendId, id);
+            jdbcTemplate.update("UPDATE users SET friends_count = friends_count - 1 WHERE user_id = ?;", id);
+        }
+        return friend;
+    }
+
+    private List<Friendship> insertFriendships(Collection<Friendship> friendships) {
+        List<Object[]> insertArgs = new ArrayList<>(friendships.size());
+        for (Friendship friendship : friendships) {
+            int id = friendship.getUserId();
+            int friendId = friendship.getFriendId();
+            insertArgs.add(new Object[]{id, friendId, id, friendId});
+        }
+        int[] rows = jdbcTemplate.batchUpdate(SQL_ADD_FRIEND_IF_ABSENT, insertArgs);
+        List<Friendship> inserted = new ArrayList<>();
+        Map<Integer, Integer> counts = new HashMap<>();
+        int i = 0;
+        for (Friendship friendship : friendships) {
+            if (rows[i++] > 0) {
+                inserted.add(friendship);
+                counts.merge(friendship.getUserId(), 1, Integer::sum);
+            }
+        }
+        List<Object[]> statusArgs = new ArrayList<>(inserted.size());
+        for (Friendship friendship : inserted) {
+            int id = friendship.getUserId();
+            int friendId = friendship.getFriendId();
+            statusArgs.add(new Object[]{id, friendId, id, friendId});
+        }
+        jdbcTemplate.batchUpdate(SQL_SYNC_STATUS, statusArgs);
+        List<Object[]> countArgs = new ArrayList<>(counts.size());
+        counts.forEach((id, count) -> countArgs.add(new Object[]{count, id}));
+        String sqlUpdateCount = "UPDATE users SET friends_count = friends_count + ? WHERE user_id = ?;";
+        jdbcTemplate.batchUpdate(sqlUpdateCount, countArgs);
+        return inserted;
+    }
+
+    /**
+     * Одним запросом проверяет, что оба пользователя существуют, и блокирует их строки до конца транзакции,
+     * чтобы параллельные изменения дружбы этой пары шли по очереди и не расходились статус и счётчик.
+     *
+     * @return строка пользователя friendId
+     */
+    private User lockUsers(int id, int friendId) {
+        String sql = sqlGetUsers + "WHERE user_id IN (?, ?) ORDER BY user_id FOR UPDATE;";
+        List<User> users = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToUser(rs), id, friendId);
+        for (User user : users) {
+            if (user.getId() == friendId && (users.size() == 2 || id == friendId)) {
+                return user;
+            }
+        }
+        throw new ElementNotFoundException("Объект не найден");
     }
 
     private User mapRowToUser(ResultSet rs) throws SQLException {
@@ -1,23 +1,64 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     List<User> getUsers();
 
+    List<User> getUsers(int after, int limit);
+
+    /**
+     * @return пользователи с указанными id в том же порядке; несуществующие id пропускаются
+     */
+    List<User> getUsers(int[] ids);
+
     User createUser(User user);
 
     User updateUser(User user);
 
     User getUser(int id);
 
+    boolean exists(int id);
+
+    /**
+     * @return true, если существуют все перечисленные пользователи
+     */
+    boolean existsAll(int... ids);
+
+    /**
+     * @return те из ids, для которых пользователь существует
+     */
+    Set<Integer> getExistingIds(Collection<Integer> ids);
+
     User addFriend(Integer id, Integer friendId);
 
     User deleteFriend(Integer id, Integer friendId);
 
+    /**
+     * Добавляет пачку заявок в друзья, уже существующие пропускаются. Взаимность и счётчики друзей
+     * пересчитываются один раз на пачку. Все пользователи должны существовать.
+     *
+     * @return число добавленных заявок
+     */
+    int addFriends(Collection<Friendship> friendships);
+
     List<User> getFriends(int id);
 
     List<User> getCommonFriends(Integer id, Integer otherId);
+
+    /**
+     * Передаёт всех пользователей по порядку id по одному, не собирая их в список.
+     */
+    void forEachUser(Consumer<User> action);
+
+    /**
+     * Передаёт все заявки в друзья по одному, не собирая их в список.
+     */
+    void forEachFriendship(Consumer<Friendship> action);
 }
\ No newline at end of file
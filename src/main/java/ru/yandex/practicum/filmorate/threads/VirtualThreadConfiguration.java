@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.threads;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Режим виртуальных потоков (filmorate.threads.virtual.enabled=true): запросы Tomcat и асинхронные ответы
+ * MVC (потоковая выгрузка) выполняются каждый в своём виртуальном потоке, и поток, ждущий JDBC, не занимает
+ * поток платформы. Параллелизм запросов к БД по-прежнему ограничен пулом соединений. На JDK без виртуальных
+ * потоков режим выключается с предупреждением, и остаётся пул потоков Tomcat.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "filmorate.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfiguration implements WebMvcConfigurer {
+    private final Optional<ExecutorService> executor = VirtualThreads.newPerTaskExecutor();
+
+    public VirtualThreadConfiguration() {
+        if (executor.isPresent()) {
+            log.info("Запросы выполняются в виртуальных потоках.");
+        } else {
+            log.warn("JDK {} не поддерживает виртуальные потоки, используется пул потоков Tomcat.",
+                    Runtime.version().feature());
+        }
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> executor.ifPresent(protocolHandler::setExecutor);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        executor.ifPresent(service -> configurer.setTaskExecutor(new TaskExecutorAdapter(service)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.ifPresent(ExecutorService::shutdown);
+    }
+}
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.threads;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Виртуальные потоки через reflection: проект собирается под Java 11, а
+ * Executors.newVirtualThreadPerTaskExecutor() есть только в JDK 21 и новее.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return исполнитель «поток на задачу» на виртуальных потоках или пусто, если JDK их не поддерживает
+     */
+    public static Optional<ExecutorService> newPerTaskExecutor() {
+        try {
+            return Optional.of((ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return Optional.empty();
+        } catch (InvocationTargetException e) {
+            // В JDK 19–20 метод есть, но без --enable-preview бросает UnsupportedOperationException.
+            return Optional.empty();
+        }
+    }
+}
@@ -1,5 +1,3 @@
-DROP ALL OBJECTS;
-
 CREATE TABLE IF NOT EXISTS mpa (
     mpa_id INTEGER PRIMARY KEY AUTO_INCREMENT NOT NULL,
     name VARCHAR(255) NOT NULL
@@ -50,4 +48,16 @@ CREATE TABLE IF NOT EXISTS film_genres (
     genre_id INT NOT NULL,
     FOREIGN KEY (film_id) REFERENCES films(film_id),
     FOREIGN KEY (genre_id) REFERENCES genres(genre_id)
-);
\ No newline at end of file
+);
+
+INSERT INTO mpa (name) VALUES ('G'),
+					('PG'),
+					('PG-13'),
+					('R'),
+					('NC-17');
+INSERT INTO genres (name) VALUES ('Комедия'),
+				      ('Драма'),
+				      ('Мультфильм'),
+                      ('Триллер'),
+                      ('Документальный'),
+				      ('Боевик');
@@ -0,0 +1,18 @@
+-- Дубли могли остаться с тех пор, как уникальность проверялась только в коде.
+DELETE FROM likes AS l
+WHERE l._ROWID_ > (SELECT MIN(d._ROWID_) FROM likes AS d WHERE d.film_id = l.film_id AND d.user_id = l.user_id);
+DELETE FROM friends AS f
+WHERE f._ROWID_ > (SELECT MIN(d._ROWID_) FROM friends AS d WHERE d.user_id = f.user_id AND d.friend_id = f.friend_id);
+DELETE FROM film_genres AS fg
+WHERE fg._ROWID_ > (SELECT MIN(d._ROWID_) FROM film_genres AS d WHERE d.film_id = fg.film_id AND d.genre_id = fg.genre_id);
+
+UPDATE films AS f SET likes_count = (SELECT COUNT(*) FROM likes AS l WHERE l.film_id = f.film_id);
+UPDATE users AS u SET friends_count = (SELECT COUNT(*) FROM friends AS fr WHERE fr.user_id = u.user_id);
+
+ALTER TABLE likes ADD CONSTRAINT pk_likes PRIMARY KEY (film_id, user_id);
+ALTER TABLE friends ADD CONSTRAINT pk_friends PRIMARY KEY (user_id, friend_id);
+ALTER TABLE film_genres ADD CONSTRAINT pk_film_genres PRIMARY KEY (film_id, genre_id);
+
+CREATE INDEX IF NOT EXISTS idx_films_likes_count ON films (likes_count DESC, film_id);
+CREATE INDEX IF NOT EXISTS idx_likes_user_film ON likes (user_id, film_id);
+CREATE INDEX IF NOT EXISTS idx_friends_friend_user ON friends (friend_id, user_id);
@@ -1,13 +1,155 @@
 package ru.yandex.practicum.filmorate;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.datasource.DataSourceRouting;
+import ru.yandex.practicum.filmorate.datasource.ReadWriteRoutingDataSource;
+import ru.yandex.practicum.filmorate.datasource.ReplicaRead;
+import ru.yandex.practicum.filmorate.metrics.PrometheusEndpoint;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
 
-@SpringBootTest
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 class FilmorateApplicationTests {
+	@Autowired
+	private GenreStorage genreStorage;
+	@Autowired
+	private PrometheusEndpoint prometheusEndpoint;
+	@Autowired
+	private DataSource dataSource;
+	@Autowired
+	private RouteProbe routeProbe;
+	@Autowired
+	private TestRestTemplate restTemplate;
+	@LocalServerPort
+	private int port;
 
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void replicaReadsAreRouted() {
+		assertTrue(dataSource instanceof ReadWriteRoutingDataSource);
+		assertEquals(DataSourceRouting.Route.PRIMARY, DataSourceRouting.currentRoute());
+		assertEquals(DataSourceRouting.Route.REPLICA, routeProbe.route());
+		DataSourceRouting.pinToPrimary(true);
+		try {
+			assertEquals(DataSourceRouting.Route.PRIMARY, routeProbe.route());
+		} finally {
+			DataSourceRouting.pinToPrimary(false);
+		}
+		assertEquals(DataSourceRouting.Route.PRIMARY, DataSourceRouting.currentRoute());
+	}
+
+	@Test
+	void storageCallsAreExported() {
+		genreStorage.getAllGenres();
+
+		String scrape = prometheusEndpoint.scrape();
+		assertTrue(scrape.contains("# TYPE filmorate_storage_calls_seconds summary"), scrape);
+		assertTrue(scrape.contains("filmorate_storage_calls_seconds_count{class=\"GenreDbStorage\","
+				+ "method=\"getAllGenres()\"}"), scrape);
+		assertTrue(scrape.contains("filmorate_storage_calls_seconds{class=\"GenreDbStorage\","
+				+ "method=\"getAllGenres()\",quantile=\"0.99\"}"), scrape);
+		// Семейство _max идёт целиком после всех образцов summary.
+		String maxType = "# TYPE filmorate_storage_calls_seconds_max gauge";
+		assertEquals(scrape.indexOf(maxType), scrape.lastIndexOf(maxType), scrape);
+		assertTrue(scrape.indexOf(maxType) > scrape.lastIndexOf("filmorate_storage_calls_seconds_sum{"), scrape);
+		assertTrue(scrape.indexOf(maxType) < scrape.indexOf("filmorate_storage_calls_seconds_max{"), scrape);
+	}
+
+	@Test
+	void reactiveApiStreamsAndMapsErrors() {
+		for (int i = 1; i <= 3; i++) {
+			restTemplate.postForEntity("/reactive/films", Map.of("name", "film" + i, "description", "description",
+					"releaseDate", "1999-01-02", "duration", 120, "mpa", new Mpa(1, null)), String.class);
+		}
+
+		ResponseEntity<String> stream = restTemplate.getForEntity("/reactive/films", String.class);
+		ResponseEntity<String> missing = restTemplate.getForEntity("/reactive/films/{id}", String.class, 999_999);
+
+		assertEquals(HttpStatus.OK, stream.getStatusCode());
+		assertEquals("application/x-ndjson", stream.getHeaders().getContentType().toString());
+		String[] lines = stream.getBody().split("\n");
+		assertTrue(lines.length >= 3, stream.getBody());
+		assertTrue(Arrays.stream(lines).allMatch(line -> line.startsWith("{\"id\":")), stream.getBody());
+		assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
+	}
+
+	@Test
+	void popularStreamPushesRankingChanges() {
+		Film[] leader = restTemplate.getForObject("/films/popular?count=1", Film[].class);
+		int leaderLikes = leader.length == 0 ? 0 : leader[0].getLikesCount();
+		Film film = restTemplate.postForObject("/films", Map.of("name", "contender", "description", "description",
+				"releaseDate", "1999-01-02", "duration", 120, "mpa", new Mpa(1, null)), Film.class);
+		HttpRequest request = HttpRequest.newBuilder(
+				URI.create("http://localhost:" + port + "/films/popular/stream?count=1")).build();
+
+		assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+			HttpResponse<Stream<String>> response = HttpClient.newHttpClient()
+					.send(request, HttpResponse.BodyHandlers.ofLines());
+			try (Stream<String> body = response.body()) {
+				Iterator<String> lines = body.iterator();
+				assertTrue(nextEventData(lines).startsWith("["));
+				for (int i = 0; i <= leaderLikes; i++) {
+					User user = restTemplate.postForObject("/users", Map.of("email", "fan" + i + "@mail.ru",
+							"login", "fan" + film.getId() + "_" + i, "name", "fan", "birthday", "1999-01-01"),
+							User.class);
+					restTemplate.put("/films/{id}/like/{userId}", null, film.getId(), user.getId());
+				}
+				assertTrue(nextEventData(lines).startsWith("[{\"id\":" + film.getId() + ","));
+			}
+		});
+	}
+
+	private static String nextEventData(Iterator<String> lines) {
+		while (lines.hasNext()) {
+			String line = lines.next();
+			if (line.startsWith("data:")) {
+				return line.substring("data:".length());
+			}
+		}
+		throw new AssertionError("Поток событий закрылся раньше времени.");
+	}
+
+	@TestConfiguration
+	static class RouteProbeConfiguration {
+		@Bean
+		RouteProbe routeProbe() {
+			return new RouteProbe();
+		}
+	}
+
+	static class RouteProbe {
+		@ReplicaRead
+		public DataSourceRouting.Route route() {
+			return DataSourceRouting.currentRoute();
+		}
+	}
+
 }
@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("in-memory")
+class FilmorateInMemoryProfileTests {
+	@Autowired
+	private FilmStorage filmStorage;
+	@Autowired
+	private UserStorage userStorage;
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	void inMemoryStoragesAreUsed() {
+		assertTrue(filmStorage instanceof InMemoryFilmStorage);
+		assertTrue(userStorage instanceof InMemoryUserStorage);
+	}
+
+	@Test
+	void conditionalGetReturnsNotModifiedUntilWrite() throws Exception {
+		String genresTag = mockMvc.perform(get("/genres"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertNotNull(genresTag);
+		mockMvc.perform(get("/genres").header(HttpHeaders.IF_NONE_MATCH, genresTag))
+				.andExpect(status().isNotModified());
+
+		mockMvc.perform(post("/films").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"name\":\"film\",\"description\":\"description\",\"releaseDate\":\"1999-01-02\","
+						+ "\"duration\":120,\"mpa\":{\"id\":1}}"))
+				.andExpect(status().isOk());
+		mockMvc.perform(post("/users").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"email\":\"user@mail.ru\",\"login\":\"user\",\"birthday\":\"1990-01-01\"}"))
+				.andExpect(status().isOk());
+		String popularTag = mockMvc.perform(get("/films/popular"))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		String filmTag = mockMvc.perform(get("/films/1"))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		mockMvc.perform(get("/films/popular").header(HttpHeaders.IF_NONE_MATCH, popularTag))
+				.andExpect(status().isNotModified());
+
+		mockMvc.perform(put("/films/1/like/1")).andExpect(status().isOk());
+
+		mockMvc.perform(get("/films/popular").header(HttpHeaders.IF_NONE_MATCH, popularTag))
+				.andExpect(status().isOk());
+		String likedTag = mockMvc.perform(get("/films/1").header(HttpHeaders.IF_NONE_MATCH, filmTag))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertNotEquals(filmTag, likedTag);
+	}
+
+	@Test
+	void cachedResponseIsServedPreGzipped() throws Exception {
+		String json = mockMvc.perform(get("/mpa"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+
+		MockHttpServletResponse cached = mockMvc.perform(get("/mpa").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse();
+		assertEquals("gzip", cached.getHeader(HttpHeaders.CONTENT_ENCODING));
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(cached.getContentAsByteArray()))) {
+			assertEquals(json, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+		assertEquals(json, mockMvc.perform(get("/mpa")).andReturn().getResponse().getContentAsString());
+
+		MockHttpServletResponse refused = mockMvc.perform(get("/mpa")
+						.header(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip;q=0, *;q=0.5"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse();
+		assertNull(refused.getHeader(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(json, refused.getContentAsString());
+	}
+
+}
@@ -1,12 +1,19 @@
 package ru.yandex.practicum.filmorate.controllers;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import ru.yandex.practicum.filmorate.exceptions.ElementNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.LikeWriteBuffer;
+import ru.yandex.practicum.filmorate.service.PopularityFeed;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
@@ -15,10 +22,19 @@ import javax.validation.ConstraintViolation;
 import javax.validation.Validation;
 import javax.validation.Validator;
 import javax.validation.ValidatorFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -30,9 +46,14 @@ public class FilmControllerTest {
     @BeforeEach
     public void beforeEach() {
         userStorage = new InMemoryUserStorage();
-        filmController = new FilmController(new FilmService(new InMemoryFilmStorage(), userStorage));
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        LikeWriteBuffer likeWriteBuffer = new LikeWriteBuffer(filmStorage, new SimpleMeterRegistry(),
+                false, 200, 1000, 10000);
         ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
         validator = factory.getValidator();
+        filmController = new FilmController(new FilmService(filmStorage, userStorage, likeWriteBuffer, validator),
+                new PopularityFeed(filmStorage, new EntityVersions(), 1000, 1000, 1),
+                Jackson2ObjectMapperBuilder.json().build());
     }
 
     @Test
@@ -46,6 +67,23 @@ public class FilmControllerTest {
         assertTrue(filmController.getFilms().contains(film), "Созданного фильма в списке нет.");
     }
 
+    @Test
+    public void getFilmsPageTest() {
+        for (int i = 1; i <= 3; i++) {
+            filmController.createFilm(new Film("film" + i, "filmDescription",
+                    LocalDate.of(1999, 11, 11), 180));
+        }
+
+        ResponseEntity<List<Film>> page = filmController.getFilms(0, 2);
+        assertEquals(2, page.getBody().size(), "Размер страницы не совпадает.");
+        assertEquals("2", page.getHeaders().getFirst("X-Next-Cursor"), "Курсор не совпадает.");
+
+        ResponseEntity<List<Film>> lastPage = filmController.getFilms(2, 2);
+        assertEquals(1, lastPage.getBody().size(), "Размер страницы не совпадает.");
+        assertNull(lastPage.getHeaders().getFirst("X-Next-Cursor"), "У последней страницы не должно быть курсора.");
+        assertThrows(ValidationException.class, () -> filmController.getFilms(0, 0), "Ошибка не выводится");
+    }
+
     @Test
     public void postFilmTest() {
         Film film = new Film("film1", "film1Description",
@@ -209,4 +247,100 @@ public class FilmControllerTest {
 
         assertThrows(ElementNotFoundException.class, () -> filmController.getFilm(2), "Ошибка не выводится");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void concurrentLikesTest() throws Exception {
+        int users = 200;
+        for (int i = 1; i <= 3; i++) {
+            filmController.createFilm(new Film("film" + i, "filmDescription", LocalDate.of(1999, 11, 11), 180));
+        }
+        for (int i = 1; i <= users; i++) {
+            userStorage.createUser(new User("user@mail.ru", "userLogin", "userName", LocalDate.of(1999, 11, 11)));
+        }
+        List<Callable<Void>> likes = new ArrayList<>();
+        for (int userId = 1; userId <= users; userId++) {
+            int id = userId;
+            likes.add(() -> {
+                filmController.addLike(2, id);
+                filmController.addLike(2, id);
+                if (id % 2 == 0) {
+                    filmController.addLike(3, id);
+                    filmController.deleteLike(2, id);
+                }
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (Future<Void> result : executor.invokeAll(likes)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(users / 2, filmController.getFilm(2).getLikesCount(), "Количество лайков не совпадает.");
+        assertEquals(users / 2, filmController.getFilm(3).getLikesCount(), "Количество лайков не совпадает.");
+        List<Film> top = filmController.getTopFilms(3);
+        assertEquals(List.of(2, 3, 1), List.of(top.get(0).getId(), top.get(1).getId(), top.get(2).getId()),
+                "Ошибка в порядке фильмов.");
+        assertEquals(users / 2, top.get(0).getLikesCount(), "Количество лайков в рейтинге не совпадает.");
+    }
+
+    @Test
+    public void createFilmsBatchTest() throws IOException {
+        String ndjson = "{\"name\":\"film1\",\"description\":\"d\",\"releaseDate\":\"1999-11-11\",\"duration\":180}\n" +
+                "{\"name\":\"film2\",\"description\":\"d\",\"releaseDate\":\"1999-11-11\",\"duration\":\"x\"}\n" +
+                "{\"name\":\" \",\"description\":\"d\",\"releaseDate\":\"1999-11-11\",\"duration\":180}\n" +
+                "{\"name\":\"film4\",\"description\":\"d\",\"releaseDate\":\"1800-11-11\",\"duration\":180}\n" +
+                "{\"name\":\"film5\",\"description\":\"d\",\"releaseDate\":\"1999-11-11\",\"duration\":90}\n";
+
+        BatchResult result = filmController.createFilms(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(5, result.getReceived(), "Количество записей не совпадает.");
+        assertEquals(Arrays.asList(1, null, null, null, 2), result.getIds(), "Id созданных фильмов не совпадают.");
+        assertEquals(3, result.getErrors().size(), "Количество ошибок не совпадает.");
+        assertEquals(2, filmController.getFilms().size(), "Количество фильмов не совпадает.");
+
+        String array = "[{\"name\":\"film6\",\"description\":\"d\",\"releaseDate\":\"1999-11-11\",\"duration\":1}," +
+                "{\"name\":\"film7\",";
+        result = filmController.createFilms(new ByteArrayInputStream(array.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(Arrays.asList(3, null), result.getIds(), "Записи до синтаксической ошибки не сохранены.");
+    }
+
+    @Test
+    public void searchFilmsTest() {
+        filmController.createFilm(new Film("Москва слезам не верит", "Мелодрама о жизни в столице",
+                LocalDate.of(1980, 2, 11), 150));
+        filmController.createFilm(new Film("Moscow Mule", "Cocktail story about Moscow",
+                LocalDate.of(2020, 1, 1), 90));
+        filmController.createFilm(new Film("Ёлки", "Новогодняя комедия в Москве",
+                LocalDate.of(2010, 12, 16), 90));
+        filmController.createFilm(new Film("Star Trek", "Space opera", LocalDate.of(2009, 5, 7), 127));
+        filmController.createFilm(new Film("Star Trek", "Space opera", LocalDate.of(2009, 5, 7), 127));
+        userStorage.createUser(new User(0, "user@mail.ru", "userLogin", "userName",
+                LocalDate.of(1999, 11, 11)));
+        filmController.addLike(5, 1);
+
+        assertEquals(List.of(1, 3), ids(filmController.searchFilms("моск", 10)),
+                "Совпадение в названии должно быть выше совпадения в описании.");
+        assertEquals(List.of(3), ids(filmController.searchFilms("ЕЛКИ", 10)), "Ё и регистр не нормализуются.");
+        assertEquals(List.of(2), ids(filmController.searchFilms("moscow", 10)), "Латиница не ищется.");
+        assertEquals(List.of(5, 4), ids(filmController.searchFilms("star oper", 10)),
+                "При равной релевантности выше должен быть фильм с лайками.");
+        assertEquals(List.of(5), ids(filmController.searchFilms("star oper", 1)), "Лимит не соблюдается.");
+        assertTrue(filmController.searchFilms("star moscow", 10).isEmpty(), "Должны совпасть все слова.");
+
+        filmController.updateFilm(new Film(4, "Star Trek: Возмездие", "Space opera",
+                LocalDate.of(2013, 5, 9), 132));
+
+        assertEquals(List.of(4), ids(filmController.searchFilms("возм", 10)), "Обновление не попало в индекс.");
+        assertThrows(ValidationException.class, () -> filmController.searchFilms(" ", 10),
+                "Пустой запрос должен отклоняться.");
+    }
+
+    private static List<Integer> ids(List<Film> films) {
+        return films.stream().map(Film::getId).collect(Collectors.toList());
+    }
+}
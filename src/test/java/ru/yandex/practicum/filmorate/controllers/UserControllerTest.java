@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.controllers;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import ru.yandex.practicum.filmorate.exceptions.ElementNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.User;
@@ -13,7 +14,13 @@ import javax.validation.Validation;
 import javax.validation.Validator;
 import javax.validation.ValidatorFactory;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -23,7 +30,8 @@ public class UserControllerTest {
 
     @BeforeEach
     public void beforeEach() {
-        userController = new UserController(new UserService(new InMemoryUserStorage()));
+        userController = new UserController(new UserService(new InMemoryUserStorage()),
+                Jackson2ObjectMapperBuilder.json().build());
         ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
         validator = factory.getValidator();
     }
@@ -154,6 +162,43 @@ public class UserControllerTest {
         userController.addFriend(2, 3);
 
         assertTrue(userController.getCommonFriends(1, 2).contains(user3), "У user1 и user2 нет общих друзей");
+
+        userController.addFriend(1, 2);
+        assertEquals(1, userController.getCommonFriends(1, 2).size(), "Неверное число общих друзей.");
+        assertEquals(2, userController.getFriends(1).size(), "Поиск общих друзей изменил список друзей user1.");
         assertThrows(ElementNotFoundException.class, () -> userController.getFriends(4), "Ошибка не выводится");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void concurrentCreateAndAddFriendsTest() throws Exception {
+        int users = 50;
+        List<Callable<User>> creates = new ArrayList<>();
+        for (int i = 1; i <= users; i++) {
+            User user = new User("user" + i + "@mail.ru", "user" + i, "name", LocalDate.of(1999, 11, 11));
+            creates.add(() -> userController.createUser(user));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (Future<User> result : executor.invokeAll(creates)) {
+                result.get();
+            }
+            List<Callable<User>> friends = new ArrayList<>();
+            for (int i = 2; i <= users; i++) {
+                int friendId = i;
+                friends.add(() -> userController.addFriend(1, friendId));
+                friends.add(() -> userController.addFriend(friendId, 1));
+            }
+            for (Future<User> result : executor.invokeAll(friends)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(users, userController.getUsers().size(), "Количество пользователей не совпадает.");
+        assertEquals(users, userController.getUsers().get(users - 1).getId(), "Id выданы не по порядку.");
+        assertEquals(users - 1, userController.getFriends(1).size(), "Количество друзей не совпадает.");
+        assertEquals(1, userController.getFriends(2).size(), "Количество друзей не совпадает.");
+        assertEquals(1, userController.getCommonFriends(2, 3).get(0).getId(), "Общий друг не найден.");
+    }
+}
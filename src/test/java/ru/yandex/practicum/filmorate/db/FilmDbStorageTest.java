@@ -1,22 +1,57 @@
 package ru.yandex.practicum.filmorate.db;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.datasource.DataSourceRouting;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IngestResult;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.ExportService;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.LikeWriteBuffer;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.film.CachedFilmStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraphIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
+import javax.validation.Validation;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @JdbcTest // указываем, о необходимости подготовить бины для работы с БД
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
@@ -28,7 +63,7 @@ public class FilmDbStorageTest {
     public void testCreateAndGetFilm() {
         Film film = new Film(1, "film", "description", LocalDate.of(1999, 1, 2), 120);
         film.setMpa(new Mpa(1, "G"));
-        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate);
+        FilmDbStorage filmStorage = newFilmStorage(true);
         filmStorage.createFilm(film);
 
         assertThat(filmStorage.getFilm(1))
@@ -37,13 +72,55 @@ public class FilmDbStorageTest {
                 .isEqualTo(film);
     }
 
+    @DirtiesContext
+    @Test
+    public void testGetFilmWithGenres() {
+        Film film = new Film("film", "description", LocalDate.of(1999, 1, 2), 120);
+        film.setMpa(new Mpa(1, "G"));
+        film.getGenres().add(new Genre(3, "Мультфильм"));
+        film.getGenres().add(new Genre(1, "Комедия"));
+        FilmDbStorage filmStorage = newFilmStorage(true);
+        filmStorage.createFilm(film);
+        Film film2 = new Film("film2", "description", LocalDate.of(1999, 1, 2), 120);
+        film2.setMpa(new Mpa(1, "G"));
+        filmStorage.createFilm(film2);
+
+        assertThat(filmStorage.getFilm(1).getGenres())
+                .usingRecursiveComparison()
+                .isEqualTo(List.of(new Genre(1, "Комедия"), new Genre(3, "Мультфильм")));
+        assertThat(filmStorage.getFilm(2).getGenres().isEmpty()).isTrue();
+    }
+
+    @DirtiesContext
+    @Test
+    public void testCreateFilmWithUnknownReferences() {
+        FilmDbStorage filmStorage = newFilmStorage(true);
+        Film film = new Film("film", "description", LocalDate.of(1999, 1, 2), 120);
+        film.setMpa(new Mpa(0, null));
+        assertThrows(ValidationException.class, () -> filmStorage.createFilm(film));
+
+        film.setMpa(new Mpa(2, null));
+        film.getGenres().add(new Genre(0, null));
+        assertThrows(ValidationException.class, () -> filmStorage.createFilm(film));
+
+        film.setGenres(new ArrayList<>(List.of(new Genre(2, null), new Genre(1, null), new Genre(2, null))));
+        Film created = filmStorage.createFilm(film);
+        assertThat(created.getMpa()).isEqualTo(new Mpa(2, "PG"));
+        assertThat(created.getGenres())
+                .usingRecursiveComparison()
+                .isEqualTo(List.of(new Genre(1, "Комедия"), new Genre(2, "Драма")));
+        assertThat(created)
+                .usingRecursiveComparison()
+                .isEqualTo(filmStorage.getFilm(created.getId()));
+    }
+
     @DirtiesContext
     @Test
     public void testUpdateFilm() {
         Film film = new Film("film", "description",
                 LocalDate.of(1999, 1, 2), 120);
         film.setMpa(new Mpa(1, "G"));
-        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate);
+        FilmDbStorage filmStorage = newFilmStorage(true);
         filmStorage.createFilm(film);
 
         Film updatedFilm = new Film(1, "filmName", "filmDescription",
@@ -71,23 +148,45 @@ public class FilmDbStorageTest {
         Film film2 = new Film(2, "film2", "description", LocalDate.of(1999, 1, 2), 120);
         film2.setMpa(new Mpa(1, "G"));
 
-        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate);
+        FilmDbStorage filmStorage = newFilmStorage(true);
         filmStorage.createFilm(film);
         filmStorage.createFilm(film2);
 
         assertThat(filmStorage.getFilms().size()).isEqualTo(2);
     }
 
+    @DirtiesContext
+    @Test
+    public void testGetFilmsPage() {
+        FilmDbStorage filmStorage = newFilmStorage(true);
+        for (int i = 1; i <= 5; i++) {
+            Film film = new Film("film" + i, "description", LocalDate.of(1999, 1, 2), 120);
+            film.setMpa(new Mpa(1, "G"));
+            filmStorage.createFilm(film);
+        }
+
+        List<Film> firstPage = filmStorage.getFilms(0, 2);
+        assertThat(firstPage.size()).isEqualTo(2);
+        assertThat(firstPage.get(1).getId()).isEqualTo(2);
+
+        List<Film> lastPage = filmStorage.getFilms(4, 2);
+        assertThat(lastPage.size()).isEqualTo(1);
+        assertThat(lastPage.get(0).getId()).isEqualTo(5);
+    }
+
     @DirtiesContext
     @Test
     public void testAddAndDeleteLike() {
         Film film = new Film("film", "description",
                 LocalDate.of(1999, 1, 2), 120);
         film.setMpa(new Mpa(1, "G"));
-        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate);
-        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate);
+        FilmDbStorage filmStorage = newFilmStorage(true);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
         User user = new User("email@mail.ru", "login", "name", LocalDate.of(1999, 1, 1));
-        FilmService filmService = new FilmService(filmStorage, userStorage);
+        LikeWriteBuffer likeWriteBuffer = new LikeWriteBuffer(filmStorage, new SimpleMeterRegistry(),
+                false, 200, 1000, 10000);
+        FilmService filmService = new FilmService(filmStorage, userStorage, likeWriteBuffer,
+                Validation.buildDefaultValidatorFactory().getValidator());
         filmStorage.createFilm(film);
         userStorage.createUser(user);
 
@@ -101,4 +200,324 @@ public class FilmDbStorageTest {
         assertThat(filmService.getFilm(1).getLikesCount())
                 .isEqualTo(0);
     }
+
+    @DirtiesContext
+    @Test
+    public void testLikeIsUnique() {
+        Film film = new Film("film", "description", LocalDate.of(1999, 1, 2), 120);
+        film.setMpa(new Mpa(1, "G"));
+        newFilmStorage(true).createFilm(film);
+        new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true)).createUser(new User("email@mail.ru", "login",
+                "name", LocalDate.of(1999, 1, 1)));
+        String sql = "INSERT INTO likes (user_id, film_id) VALUES (1, 1);";
+        jdbcTemplate.update(sql);
+
+        assertThrows(DuplicateKeyException.class, () -> jdbcTemplate.update(sql));
+    }
+
+    @DirtiesContext
+    @Test
+    public void testCachedFilmStorage() {
+        FilmDbStorage filmStorage = newFilmStorage(true);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EntityVersions versions = new EntityVersions();
+        CachedFilmStorage cachedStorage = new CachedFilmStorage(filmStorage, versions, meterRegistry, 1);
+        for (int i = 1; i <= 2; i++) {
+            Film film = new Film("film" + i, "description", LocalDate.of(1999, 1, 2), 120);
+            film.setMpa(new Mpa(1, "G"));
+            cachedStorage.createFilm(film);
+        }
+        userStorage.createUser(new User("email@mail.ru", "login", "name", LocalDate.of(1999, 1, 1)));
+
+        Film cached = cachedStorage.getFilm(1);
+        assertThat(cachedStorage.getFilm(1)).isSameAs(cached);
+        assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1.0);
+
+        String filmTag = versions.entityTag(EntityVersions.FILMS, 1);
+        String filmsTag = versions.collectionTag(EntityVersions.FILMS);
+        cachedStorage.addLike(1, 1);
+        String likedTag = versions.entityTag(EntityVersions.FILMS, 1);
+        cachedStorage.addLike(1, 1);
+        assertThat(cachedStorage.getFilm(1).getLikesCount()).isEqualTo(1);
+        assertThat(likedTag).isNotEqualTo(filmTag);
+        assertThat(versions.entityTag(EntityVersions.FILMS, 1)).isEqualTo(likedTag);
+        assertThat(versions.collectionTag(EntityVersions.FILMS)).isNotEqualTo(filmsTag);
+        assertThat(versions.entityTag(EntityVersions.FILMS, 2)).startsWith("W/\"films-2-");
+        assertThat(cachedStorage.getFilm(1).getName()).isEqualTo("film1");
+        assertThat(cached.getLikesCount()).isEqualTo(0);
+
+        Film update = new Film(1, "updated", "description", LocalDate.of(1999, 1, 2), 120);
+        update.setMpa(new Mpa(1, "G"));
+        cachedStorage.updateFilm(update);
+        assertThat(cachedStorage.getFilm(1).getName()).isEqualTo("updated");
+        assertThat(cachedStorage.getFilm(1).getLikesCount()).isEqualTo(1);
+
+        cachedStorage.getFilm(2);
+        assertThat(cachedStorage.size()).isEqualTo(1);
+    }
+
+    @DirtiesContext
+    @Test
+    public void testLikeWriteBuffer() {
+        FilmDbStorage filmStorage = newFilmStorage(true);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
+        for (int i = 1; i <= 3; i++) {
+            Film film = new Film("film" + i, "description", LocalDate.of(1999, 1, 2), 120);
+            film.setMpa(new Mpa(1, "G"));
+            filmStorage.createFilm(film);
+            userStorage.createUser(new User("user" + i + "@mail.ru", "user" + i, "name", LocalDate.of(1999, 1, 1)));
+        }
+        filmStorage.addLike(3, 1);
+        filmStorage.getTopFilms(1);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        LikeWriteBuffer likeWriteBuffer = new LikeWriteBuffer(filmStorage, meterRegistry, true, 60_000, 100, 100);
+        FilmService filmService = new FilmService(filmStorage, userStorage, likeWriteBuffer,
+                Validation.buildDefaultValidatorFactory().getValidator());
+
+        filmService.addLike(1, 1);
+        filmService.addLike(1, 2);
+        filmService.addLike(1, 1);
+        filmService.addLike(2, 1);
+        filmService.deleteLike(2, 1);
+        filmService.deleteLike(3, 1);
+
+        assertThat(likeWriteBuffer.getPendingCount()).isEqualTo(4);
+        assertThat(meterRegistry.get("filmorate.likes.buffer.pending").gauge().value()).isEqualTo(4.0);
+        assertThat(filmStorage.getFilm(1).getLikesCount()).isEqualTo(0);
+
+        likeWriteBuffer.flush();
+
+        assertThat(likeWriteBuffer.getPendingCount()).isEqualTo(0);
+        assertThat(meterRegistry.get("filmorate.likes.buffer.flush").timer().count()).isEqualTo(1);
+        assertThat(filmStorage.getFilm(1).getLikesCount()).isEqualTo(2);
+        assertThat(filmStorage.getFilm(2).getLikesCount()).isEqualTo(0);
+        assertThat(filmStorage.getFilm(3).getLikesCount()).isEqualTo(0);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM likes;", Integer.class)).isEqualTo(2);
+        assertThat(filmStorage.getTopFilms(1).get(0).getId()).isEqualTo(1);
+    }
+
+    @DirtiesContext
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testConcurrentLikes() throws Exception {
+        int users = 16;
+        int attempts = 4;
+        Film film = new Film("film", "description", LocalDate.of(1999, 1, 2), 120);
+        film.setMpa(new Mpa(1, "G"));
+        FilmDbStorage filmStorage = newFilmStorage(true);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
+        filmStorage.createFilm(film);
+        for (int i = 1; i <= users; i++) {
+            userStorage.createUser(new User("user" + i + "@mail.ru", "user" + i, "name", LocalDate.of(1999, 1, 1)));
+        }
+        filmStorage.getTopFilms(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger emptyTops = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                if (filmStorage.getTopFilms(1).isEmpty()) {
+                    emptyTops.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+        try {
+            hammer(executor, users * attempts, i -> filmStorage.addLike(1, i % users + 1));
+
+            assertThat(filmStorage.getFilm(1).getLikesCount()).isEqualTo(users);
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM likes;", Integer.class)).isEqualTo(users);
+            assertThat(filmStorage.getTopFilms(1).get(0).getLikesCount()).isEqualTo(users);
+
+            hammer(executor, users * attempts, i -> filmStorage.deleteLike(1, i % users + 1));
+
+            assertThat(filmStorage.getFilm(1).getLikesCount()).isEqualTo(0);
+            assertThat(filmStorage.getTopFilms(1).get(0).getLikesCount()).isEqualTo(0);
+        } finally {
+            running.set(false);
+            reader.join();
+            executor.shutdownNow();
+        }
+        // Перестановка фильма в рейтинге не прячет его от читателей, а выдача — копия, а не запись индекса.
+        assertThat(emptyTops.get()).isEqualTo(0);
+        filmStorage.getTopFilms(1).get(0).setLikesCount(100);
+        assertThat(filmStorage.getTopFilms(1).get(0).getLikesCount()).isEqualTo(0);
+    }
+
+    @DirtiesContext
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testCachedFilmStorageLoadsFromPrimary() {
+        List<DataSourceRouting.Route> routes = new ArrayList<>();
+        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate, new PopularityIndex(true), new FilmSearchIndex(),
+                new GenreDbStorage(jdbcTemplate), new MpaDbStorage(jdbcTemplate)) {
+            @Override
+            public Film getFilm(int id) {
+                routes.add(DataSourceRouting.currentRoute());
+                return super.getFilm(id);
+            }
+        };
+        CachedFilmStorage cachedStorage = new CachedFilmStorage(filmStorage, new EntityVersions(),
+                new SimpleMeterRegistry(), 10);
+        Film film = new Film("film", "description", LocalDate.of(1999, 1, 2), 120);
+        film.setMpa(new Mpa(1, "G"));
+        cachedStorage.createFilm(film);
+        routes.clear();
+
+        boolean previous = DataSourceRouting.enterReplicaRead();
+        try {
+            assertThat(DataSourceRouting.currentRoute()).isEqualTo(DataSourceRouting.Route.REPLICA);
+            cachedStorage.getFilm(1);
+            assertThat(DataSourceRouting.currentRoute()).isEqualTo(DataSourceRouting.Route.REPLICA);
+        } finally {
+            DataSourceRouting.exitReplicaRead(previous);
+        }
+        assertThat(routes).isEqualTo(List.of(DataSourceRouting.Route.PRIMARY));
+    }
+
+    private FilmDbStorage newFilmStorage(boolean popularityIndexEnabled) {
+        return new FilmDbStorage(jdbcTemplate, new PopularityIndex(popularityIndexEnabled), new FilmSearchIndex(),
+                new GenreDbStorage(jdbcTemplate), new MpaDbStorage(jdbcTemplate));
+    }
+
+    private static void hammer(ExecutorService executor, int tasks, IntConsumer task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < tasks; i++) {
+            int n = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.accept(n);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @DirtiesContext
+    @Test
+    public void testGetTopFilms() {
+        FilmDbStorage filmStorage = newFilmStorage(true);
+        FilmDbStorage sqlFilmStorage = newFilmStorage(false);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
+        for (int i = 1; i <= 3; i++) {
+            Film film = new Film("film" + i, "description", LocalDate.of(1999, 1, 2), 120);
+            film.setMpa(new Mpa(1, "G"));
+            filmStorage.createFilm(film);
+            userStorage.createUser(new User("user" + i + "@mail.ru", "user" + i, "name", LocalDate.of(1999, 1, 1)));
+        }
+        filmStorage.getTopFilms(1);
+
+        filmStorage.addLike(3, 1);
+        filmStorage.addLike(3, 2);
+        filmStorage.addLike(2, 1);
+        filmStorage.addLike(1, 1);
+        filmStorage.deleteLike(1, 1);
+
+        List<Film> top = filmStorage.getTopFilms(2);
+        assertThat(top.size()).isEqualTo(2);
+        assertThat(top.get(0).getId()).isEqualTo(3);
+        assertThat(top.get(0).getLikesCount()).isEqualTo(2);
+        assertThat(top.get(1).getId()).isEqualTo(2);
+        assertThat(top)
+                .usingRecursiveComparison()
+                .isEqualTo(sqlFilmStorage.getTopFilms(2));
+    }
+
+    @DirtiesContext
+    @Test
+    public void testCreateFilms() {
+        FilmDbStorage filmStorage = newFilmStorage(true);
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Film film = new Film("film" + i, "description", LocalDate.of(1999, 1, 2), 120);
+            film.setMpa(new Mpa(1, null));
+            film.setGenres(List.of(new Genre(2, null), new Genre(1, null), new Genre(2, null)));
+            films.add(film);
+        }
+        films.get(1).setMpa(new Mpa(99, null));
+        films.get(2).setReleaseDate(LocalDate.of(1800, 1, 1));
+
+        BatchResult result = filmStorage.createFilms(films);
+
+        assertThat(result.getCreated()).isEqualTo(2);
+        assertThat(result.getIds()).isEqualTo(Arrays.asList(1, null, null, 2));
+        assertThat(result.getErrors().size()).isEqualTo(2);
+        assertThat(result.getErrors().get(0).getIndex()).isEqualTo(1);
+        assertThat(filmStorage.getFilm(2).getGenres()).isEqualTo(List.of(new Genre(1, "Комедия"),
+                new Genre(2, "Драма")));
+        assertThat(filmStorage.getTopFilms(10).size()).isEqualTo(2);
+    }
+
+    @DirtiesContext
+    @Test
+    public void testAddLikesBatch() throws Exception {
+        FilmDbStorage filmStorage = newFilmStorage(true);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
+        for (int i = 1; i <= 2; i++) {
+            Film film = new Film("film" + i, "description", LocalDate.of(1999, 1, 2), 120);
+            film.setMpa(new Mpa(1, null));
+            filmStorage.createFilm(film);
+            userStorage.createUser(new User("user" + i + "@mail.ru", "user" + i, "name", LocalDate.of(1999, 1, 1)));
+        }
+        filmStorage.addLike(1, 1);
+        LikeWriteBuffer likeWriteBuffer = new LikeWriteBuffer(filmStorage, new SimpleMeterRegistry(),
+                false, 200, 1000, 10000);
+        FilmService filmService = new FilmService(filmStorage, userStorage, likeWriteBuffer,
+                Validation.buildDefaultValidatorFactory().getValidator());
+        String json = "[{\"filmId\":1,\"userId\":1},{\"filmId\":1,\"userId\":2},{\"filmId\":2,\"userId\":2}," +
+                "{\"filmId\":2,\"userId\":2},{\"filmId\":3,\"userId\":1},{\"filmId\":2,\"userId\":7}]";
+
+        IngestResult result = filmService.addLikes(Jackson2ObjectMapperBuilder.json().build()
+                .readerFor(Like.class).readValues(json));
+
+        assertThat(result.getReceived()).isEqualTo(6);
+        assertThat(result.getDuplicates()).isEqualTo(1);
+        assertThat(result.getSkipped()).isEqualTo(2);
+        assertThat(result.getApplied()).isEqualTo(2);
+        assertThat(filmStorage.getFilm(1).getLikesCount()).isEqualTo(2);
+        assertThat(filmStorage.getTopFilms(1).get(0).getId()).isEqualTo(1);
+        assertThat(filmStorage.getFilm(2).getLikesCount()).isEqualTo(1);
+    }
+
+    @DirtiesContext
+    @Test
+    public void testExportFilmsAndLikes() throws Exception {
+        FilmDbStorage filmStorage = newFilmStorage(true);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
+        for (int i = 1; i <= 3; i++) {
+            Film film = new Film("film" + i, "description", LocalDate.of(1999, 1, 2), 120);
+            film.setMpa(new Mpa(1, null));
+            if (i != 2) {
+                film.getGenres().add(new Genre(3, null));
+                film.getGenres().add(new Genre(1, null));
+            }
+            filmStorage.createFilm(film);
+            userStorage.createUser(new User("user" + i + "@mail.ru", "user" + i, "name", LocalDate.of(1999, 1, 1)));
+        }
+        filmStorage.addLike(1, 2);
+        filmStorage.addLike(3, 1);
+        filmStorage.addLike(3, 3);
+        ExportService exportService = new ExportService(filmStorage, userStorage,
+                Jackson2ObjectMapperBuilder.json().build());
+
+        List<Film> films = new ArrayList<>();
+        filmStorage.forEachFilm(films::add);
+        ByteArrayOutputStream likes = new ByteArrayOutputStream();
+        long exported = exportService.exportLikes(likes);
+
+        assertThat(films.size()).isEqualTo(3);
+        assertThat(films.get(0).getGenres())
+                .usingRecursiveComparison()
+                .isEqualTo(List.of(new Genre(1, "Комедия"), new Genre(3, "Мультфильм")));
+        assertThat(films.get(1).getGenres().isEmpty()).isTrue();
+        assertThat(films.get(2).getLikesCount()).isEqualTo(2);
+        assertThat(exported).isEqualTo(3);
+        assertThat(likes.toString(StandardCharsets.UTF_8)).isEqualTo("{\"filmId\":1,\"userId\":2}\n" +
+                "{\"filmId\":3,\"userId\":1}\n{\"filmId\":3,\"userId\":3}\n");
+    }
 }
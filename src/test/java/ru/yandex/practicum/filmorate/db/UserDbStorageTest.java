@@ -1,17 +1,37 @@
 package ru.yandex.practicum.filmorate.db;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.controllers.UserController;
+import ru.yandex.practicum.filmorate.model.IngestResult;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.user.CachedUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraphIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
@@ -25,7 +45,7 @@ class UserDbStorageTest {
     public void testCreateAndFindUserById() {
         // Подготавливаем данные для теста
         User newUser = new User(1, "user@email.ru", "vanya123", "Ivan Petrov", LocalDate.of(1990, 1, 1));
-        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
         userStorage.createUser(newUser);
 
         // вызываем тестируемый метод
@@ -42,7 +62,7 @@ class UserDbStorageTest {
     @Test
     public void testUpdateUser() {
         User newUser = new User(1, "user@email.ru", "vanya123", "Ivan Petrov", LocalDate.of(1990, 1, 1));
-        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
         userStorage.createUser(newUser);
 
         User updatedUser = new User(1, "petrov@mail.ru", "vanya1", "Ivan", LocalDate.of(1990, 1, 1));
@@ -63,7 +83,7 @@ class UserDbStorageTest {
     public void testGetUsers() {
         User user1 = new User(1, "user@mail.ru", "vanya123", "Ivan Petrov", LocalDate.of(1990, 1, 1));
         User user2 = new User(2, "second@mail.ru", "second", "Second User", LocalDate.of(1990, 2, 2));
-        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
         userStorage.createUser(user1);
         userStorage.createUser(user2);
         assertThat(userStorage.getUsers().size())
@@ -72,12 +92,25 @@ class UserDbStorageTest {
                 .isEqualTo(2);
     }
 
+    @DirtiesContext
+    @Test
+    public void testGetUsersPage() {
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
+        for (int i = 1; i <= 3; i++) {
+            userStorage.createUser(new User("user" + i + "@mail.ru", "user" + i, "User", LocalDate.of(1990, 1, 1)));
+        }
+
+        List<User> page = userStorage.getUsers(1, 5);
+        assertThat(page.size()).isEqualTo(2);
+        assertThat(page.get(0).getId()).isEqualTo(2);
+    }
+
     @DirtiesContext
     @Test
     public void testAddAndDeleteFriend() {
         User user1 = new User(1, "user@mail.ru", "vanya123", "Ivan Petrov", LocalDate.of(1990, 1, 1));
         User user2 = new User(2, "second@mail.ru", "second", "Second User", LocalDate.of(1990, 2, 2));
-        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
         userStorage.createUser(user1);
         userStorage.createUser(user2);
         userStorage.addFriend(user1.getId(), user2.getId());
@@ -124,7 +157,9 @@ class UserDbStorageTest {
     public void testGetFriends() {
         User user1 = new User(1, "user@mail.ru", "vanya123", "Ivan Petrov", LocalDate.of(1990, 1, 1));
         User user2 = new User(2, "second@mail.ru", "second", "Second User", LocalDate.of(1990, 2, 2));
-        UserController userController = new UserController(new UserService(new UserDbStorage(jdbcTemplate)));
+        UserController userController = new UserController(
+                new UserService(new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true))),
+                Jackson2ObjectMapperBuilder.json().build());
         userController.createUser(user1);
         userController.createUser(user2);
         userController.addFriend(user1.getId(), user2.getId());
@@ -135,4 +170,179 @@ class UserDbStorageTest {
                 .isEqualTo(0);
     }
 
-}
\ No newline at end of file
+    @DirtiesContext
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testConcurrentMutualFriends() throws Exception {
+        int users = 6;
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
+        for (int i = 1; i <= users; i++) {
+            userStorage.createUser(new User("user" + i + "@mail.ru", "user" + i, "name", LocalDate.of(1990, 1, 1)));
+        }
+        List<Callable<User>> requests = new ArrayList<>();
+        for (int i = 1; i <= users; i++) {
+            for (int j = 1; j <= users; j++) {
+                if (i != j) {
+                    int id = i;
+                    int friendId = j;
+                    requests.add(() -> userStorage.addFriend(id, friendId));
+                    requests.add(() -> userStorage.addFriend(id, friendId));
+                }
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (Future<User> result : executor.invokeAll(requests)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friends WHERE status;", Integer.class))
+                .isEqualTo(users * (users - 1));
+        for (User user : userStorage.getUsers()) {
+            assertThat(user.getFriendsCount()).isEqualTo(users - 1);
+        }
+
+        userStorage.deleteFriend(1, 2);
+        assertThat(jdbcTemplate.queryForObject("SELECT status FROM friends WHERE user_id = 2 AND friend_id = 1;",
+                Boolean.class)).isFalse();
+        assertThat(userStorage.getUser(1).getFriendsCount()).isEqualTo(users - 2);
+    }
+
+    @DirtiesContext
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testConcurrentAddAndDeleteKeepIndexInSync() throws Exception {
+        int users = 4;
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(true));
+        UserDbStorage sqlStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(false));
+        for (int i = 1; i <= users; i++) {
+            userStorage.createUser(new User("user" + i + "@mail.ru", "user" + i, "name", LocalDate.of(1990, 1, 1)));
+        }
+        userStorage.loadFriendGraph();
+        List<Callable<User>> requests = new ArrayList<>();
+        for (int round = 0; round < 50; round++) {
+            for (int i = 1; i <= users; i++) {
+                for (int j = 1; j <= users; j++) {
+                    if (i != j) {
+                        int id = i;
+                        int friendId = j;
+                        requests.add(() -> userStorage.addFriend(id, friendId));
+                        requests.add(() -> userStorage.deleteFriend(id, friendId));
+                    }
+                }
+            }
+        }
+        Collections.shuffle(requests, new Random(42));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (Future<User> result : executor.invokeAll(requests)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 1; i <= users; i++) {
+            for (int j = 1; j <= users; j++) {
+                assertThat(new HashSet<>(userStorage.getCommonFriends(i, j)))
+                        .isEqualTo(new HashSet<>(sqlStorage.getCommonFriends(i, j)));
+            }
+        }
+    }
+
+    @DirtiesContext
+    @Test
+    public void testCachedUserStorage() {
+        FriendGraphIndex friendGraph = new FriendGraphIndex(true);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, friendGraph);
+        CachedUserStorage cachedStorage = new CachedUserStorage(userStorage, friendGraph, new EntityVersions(),
+                new SimpleMeterRegistry(), 100);
+        cachedStorage.createUser(new User("user@mail.ru", "vanya123", "Ivan Petrov", LocalDate.of(1990, 1, 1)));
+        userStorage.createUser(new User("second@mail.ru", "second", "Second User", LocalDate.of(1990, 2, 2)));
+
+        assertThat(userStorage.exists(2)).isTrue();
+        assertThat(userStorage.existsAll(1, 2, 2)).isTrue();
+        assertThat(userStorage.existsAll(1, 3)).isFalse();
+        assertThat(cachedStorage.existsAll(1, 2)).isTrue();
+        assertThat(cachedStorage.exists(3)).isFalse();
+        assertThat(userStorage.getExistingIds(List.of(1, 2, 3, 2))).isEqualTo(Set.of(1, 2));
+        assertThat(cachedStorage.getExistingIds(List.of(2, 3))).isEqualTo(Set.of(2));
+
+        cachedStorage.addFriend(1, 2);
+        assertThat(cachedStorage.getUser(1).getFriendsCount()).isEqualTo(1);
+        userStorage.createUser(new User("third@mail.ru", "third", "Third User", LocalDate.of(1990, 3, 3)));
+        cachedStorage.addFriend(3, 2);
+        assertThat(cachedStorage.getCommonFriends(1, 3).get(0).getId()).isEqualTo(2);
+        assertThat(cachedStorage.getUsers(new int[]{2, 9, 1}).size()).isEqualTo(2);
+
+        // Подтверждённые id больше не проверяются в БД.
+        jdbcTemplate.update("DELETE FROM friends;");
+        jdbcTemplate.update("DELETE FROM users;");
+        assertThat(cachedStorage.existsAll(1, 2)).isTrue();
+        assertThat(cachedStorage.getExistingIds(List.of(1, 2, 3))).isEqualTo(Set.of(1, 2));
+        assertThat(cachedStorage.getUser(1).getFriendsCount()).isEqualTo(1);
+        // Общий друг попал в кэш из пакетного чтения getCommonFriends.
+        assertThat(cachedStorage.getUser(2).getLogin()).isEqualTo("second");
+    }
+
+    @DirtiesContext
+    @Test
+    public void testCommonFriendsFromIndex() {
+        for (int i = 1; i <= 5; i++) {
+            jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, 'name', '1990-01-01');",
+                    "user" + i + "@mail.ru", "user" + i);
+        }
+        // Связи, существовавшие до запуска, попадают в индекс при загрузке.
+        jdbcTemplate.update("INSERT INTO friends (user_id, friend_id, status) VALUES (1, 3, FALSE), (2, 3, FALSE);");
+        FriendGraphIndex friendGraph = new FriendGraphIndex(true);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, friendGraph);
+        UserDbStorage sqlStorage = new UserDbStorage(jdbcTemplate, new FriendGraphIndex(false));
+        userStorage.loadFriendGraph();
+
+        userStorage.addFriend(1, 4);
+        userStorage.addFriend(1, 5);
+        userStorage.addFriend(2, 5);
+        userStorage.addFriend(2, 1);
+        assertThat(friendGraph.getFriends(1)).isEqualTo(new int[]{3, 4, 5});
+        assertThat(new HashSet<>(userStorage.getCommonFriends(1, 2)))
+                .isEqualTo(new HashSet<>(sqlStorage.getCommonFriends(1, 2)));
+        assertThat(userStorage.getCommonFriends(1, 2).size()).isEqualTo(2);
+
+        userStorage.deleteFriend(1, 5);
+        assertThat(userStorage.getCommonFriends(2, 1).get(0).getId()).isEqualTo(3);
+        assertThat(userStorage.getCommonFriends(1, 2).size()).isEqualTo(1);
+        assertThat(userStorage.getCommonFriends(3, 4).isEmpty()).isTrue();
+    }
+
+    @DirtiesContext
+    @Test
+    public void testAddFriendsBatch() throws Exception {
+        FriendGraphIndex friendGraph = new FriendGraphIndex(true);
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate, friendGraph);
+        userStorage.loadFriendGraph();
+        for (int i = 1; i <= 3; i++) {
+            userStorage.createUser(new User("user" + i + "@mail.ru", "user" + i, "name", LocalDate.of(1990, 1, 1)));
+        }
+        userStorage.addFriend(2, 1);
+        UserController userController = new UserController(new UserService(userStorage),
+                Jackson2ObjectMapperBuilder.json().build());
+        String ndjson = "{\"userId\":1,\"friendId\":2}\n{\"userId\":1,\"friendId\":3}\n" +
+                "{\"userId\":1,\"friendId\":2}\n{\"userId\":2,\"friendId\":1}\n{\"userId\":1,\"friendId\":9}\n";
+
+        IngestResult result = userController.addFriends(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(result.getReceived()).isEqualTo(5);
+        assertThat(result.getDuplicates()).isEqualTo(1);
+        assertThat(result.getSkipped()).isEqualTo(1);
+        assertThat(result.getApplied()).isEqualTo(2);
+        assertThat(userStorage.getUser(1).getFriendsCount()).isEqualTo(2);
+        assertThat(userStorage.getUser(2).getFriendsCount()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friends WHERE status;", Integer.class))
+                .isEqualTo(2);
+        assertThat(friendGraph.getFriends(1)).isEqualTo(new int[]{2, 3});
+    }
+}
@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.reactive;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+public class KeysetPublisherTest {
+
+    @Test
+    public void testReadsPagesOnDemand() {
+        List<Integer> pageStarts = new ArrayList<>();
+        KeysetPublisher<Integer> publisher = new KeysetPublisher<>((after, limit) -> {
+            pageStarts.add(after);
+            return IntStream.rangeClosed(after + 1, Math.min(after + limit, 5)).boxed().collect(Collectors.toList());
+        }, Integer::intValue, Runnable::run, 2);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(3);
+        assertThat(subscriber.received).isEqualTo(List.of(1, 2, 3));
+        assertThat(pageStarts).isEqualTo(List.of(0, 2));
+        assertThat(subscriber.completed.get()).isFalse();
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertThat(subscriber.received).isEqualTo(List.of(1, 2, 3, 4, 5));
+        assertThat(pageStarts).isEqualTo(List.of(0, 2, 4));
+        assertThat(subscriber.completed.get()).isTrue();
+        assertThat(subscriber.error.get()).isNull();
+    }
+
+    @Test
+    public void testSignalsInvalidRequestFromDrainLoop() {
+        List<Runnable> tasks = new ArrayList<>();
+        KeysetPublisher<Integer> publisher = new KeysetPublisher<>((after, limit) -> List.of(), Integer::intValue,
+                tasks::add, 2);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+        subscriber.subscription.request(1);
+        assertThat(subscriber.error.get()).isNull();
+
+        tasks.forEach(Runnable::run);
+        assertThat(subscriber.error.get()).isInstanceOf(IllegalArgumentException.class);
+        assertThat(subscriber.completed.get()).isFalse();
+    }
+
+    private static final class RecordingSubscriber implements Flow.Subscriber<Integer> {
+        private final List<Integer> received = new ArrayList<>();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed.set(true);
+        }
+    }
+}